@@ -0,0 +1,128 @@
+package su.dkzde.genki;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding throughput of a single frame. Besides operations per second, every benchmark reports
+ * {@code pixels} (indices per second) and {@code bytes} (compressed bytes per second) counters.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LZWBenchmark {
+
+    @Param({"64x64", "500x500", "2000x2000"})
+    public String size;
+
+    @Param({"2", "4", "8"})
+    public int mcs;
+
+    @Param({"noise", "flat", "photo", "screen"})
+    public String content;
+
+    private byte[] indices;
+    private List<byte[]> blocks;
+    private long compressed;
+    private byte[] canvas;
+
+    private final DataEncoder encoder = DataEncoder.makeEncoder();
+    private final DataEncoder segmentedEncoder = DataEncoder.makeSegmentedEncoder();
+    private final DataDecoder decoder = DataDecoder.makeDecoder();
+    private final DataDecoder directDecoder = DataDecoder.makeDirectDecoder();
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long pixels;
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            pixels = 0;
+            bytes = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        int width = Samples.width(size);
+        int height = Samples.height(size);
+        indices = Samples.indices(content, width, height, mcs, 0);
+        canvas = new byte[indices.length];
+        blocks = new ArrayList<>();
+        encoder.initialize(mcs);
+        encoder.accept(indices);
+        for (byte[] db = encoder.encode(true); db != null; db = encoder.encode(true)) {
+            blocks.add(db.clone());
+            compressed += db.length;
+        }
+        encoder.dispose();
+    }
+
+    @Benchmark
+    public void encode(Counters counters, Blackhole blackhole) {
+        encode(encoder, blackhole);
+        counters.pixels += indices.length;
+        counters.bytes += compressed;
+    }
+
+    @Benchmark
+    public void encodeSegmented(Counters counters, Blackhole blackhole) {
+        encode(segmentedEncoder, blackhole);
+        counters.pixels += indices.length;
+        counters.bytes += compressed;
+    }
+
+    @Benchmark
+    public int decode(Counters counters) {
+        counters.pixels += indices.length;
+        counters.bytes += compressed;
+        return decode(decoder);
+    }
+
+    @Benchmark
+    public int decodeDirect(Counters counters) {
+        counters.pixels += indices.length;
+        counters.bytes += compressed;
+        return decode(directDecoder);
+    }
+
+    private void encode(DataEncoder encoder, Blackhole blackhole) {
+        encoder.initialize(mcs);
+        encoder.accept(indices);
+        for (byte[] db = encoder.encode(true); db != null; db = encoder.encode(true)) {
+            blackhole.consume(db);
+        }
+        encoder.dispose();
+    }
+
+    private int decode(DataDecoder decoder) {
+        decoder.initialize(mcs);
+        int offset = 0;
+        for (byte[] block : blocks) {
+            offset += decoder.decode(block, canvas, offset);
+        }
+        decoder.dispose();
+        return offset;
+    }
+}
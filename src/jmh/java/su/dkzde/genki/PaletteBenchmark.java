@@ -0,0 +1,108 @@
+package su.dkzde.genki;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Quantization and mapping of pixels to palette indices of a single frame.
+ * Every benchmark reports a {@code pixels} counter, pixels processed per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PaletteBenchmark {
+
+    @Param({"500x500", "2000x2000"})
+    public String size;
+
+    @Param({"16", "256"})
+    public int colors;
+
+    private int width;
+    private int[] argb;
+    private byte[] indices;
+    private Palette palette;
+    private PaletteMapper mapper;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long pixels;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            pixels = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        width = Samples.width(size);
+        argb = Samples.argb(width, Samples.height(size), 0);
+        indices = new byte[argb.length];
+        palette = Quantizer.makeMedianCut().palette(argb, colors);
+        mapper = new PaletteMapper(palette);
+    }
+
+    @Benchmark
+    public Palette medianCut(Counters counters) {
+        counters.pixels += argb.length;
+        return Quantizer.makeMedianCut().palette(argb, colors);
+    }
+
+    @Benchmark
+    public Palette octree(Counters counters) {
+        counters.pixels += argb.length;
+        return Quantizer.makeOctree().palette(argb, colors);
+    }
+
+    /** Comparison with every palette entry, the baseline of mappers. */
+    @Benchmark
+    public byte[] exhaustive(Counters counters) {
+        for (int j = 0; j < argb.length; j++) {
+            indices[j] = (byte) palette.nearest(argb[j] & 0xffffff);
+        }
+        counters.pixels += argb.length;
+        return indices;
+    }
+
+    /** Mapper shared between calls, as by frames of an animation. */
+    @Benchmark
+    public byte[] mapper(Counters counters) {
+        mapper.map(argb, indices);
+        counters.pixels += argb.length;
+        return indices;
+    }
+
+    /** Mapper built for the call, its cells are filled as they are used. */
+    @Benchmark
+    public byte[] mapperCold(Counters counters) {
+        new PaletteMapper(palette).map(argb, indices);
+        counters.pixels += argb.length;
+        return indices;
+    }
+
+    @Benchmark
+    public byte[] mapperParallel(Counters counters) {
+        mapper.map(argb, indices, width, ForkJoinPool.commonPool(), 4 * ForkJoinPool.getCommonPoolParallelism());
+        counters.pixels += argb.length;
+        return indices;
+    }
+}
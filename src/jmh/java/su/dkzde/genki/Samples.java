@@ -0,0 +1,151 @@
+package su.dkzde.genki;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+/** Synthetic index data of different kinds, every sample is deterministic for the same arguments. */
+final class Samples {
+    private Samples() {}
+
+    /**
+     * @param content one of {@code noise} (uniformly random indices), {@code flat} (a single index),
+     *                {@code photo} (smooth gradients with some dithering noise) or {@code screen}
+     *                (flat rectangles with rows of small text-like glyphs)
+     */
+    static byte[] indices(String content, int width, int height, int mcs, long seed) {
+        return switch (content) {
+            case "noise" -> noise(width, height, mcs, seed);
+            case "flat" -> new byte[width * height];
+            case "photo" -> photo(width, height, mcs, seed);
+            case "screen" -> screen(width, height, mcs, seed);
+            default -> throw new IllegalArgumentException(content);
+        };
+    }
+
+    /** Smooth gradients over the color cube with a little noise, as ARGB pixels. */
+    static int[] argb(int width, int height, long seed) {
+        Random random = new Random(seed);
+        int[] argb = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int r = Math.min(255, 255 * x / width + random.nextInt(4));
+                int g = Math.min(255, 255 * y / height + random.nextInt(4));
+                int b = Math.min(255, 255 * (x + y) / (width + height) + random.nextInt(4));
+                argb[y * width + x] = 0xff000000 | r << 16 | g << 8 | b;
+            }
+        }
+        return argb;
+    }
+
+    /** @param size {@code <width>x<height>} */
+    static int width(String size) {
+        return Integer.parseInt(size.substring(0, size.indexOf('x')));
+    }
+
+    static int height(String size) {
+        return Integer.parseInt(size.substring(size.indexOf('x') + 1));
+    }
+
+    private static byte[] noise(int width, int height, int mcs, long seed) {
+        Random random = new Random(seed);
+        byte[] indices = new byte[width * height];
+        for (int j = 0; j < indices.length; j++) {
+            indices[j] = (byte) random.nextInt(1 << mcs);
+        }
+        return indices;
+    }
+
+    private static byte[] photo(int width, int height, int mcs, long seed) {
+        Random random = new Random(seed);
+        double fx = 1 + random.nextDouble();
+        double fy = 1 + random.nextDouble();
+        int colors = 1 << mcs;
+        byte[] indices = new byte[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                double u = (double) x / width;
+                double v = (double) y / height;
+                double value = 0.5
+                        + 0.25 * Math.sin(2 * Math.PI * fx * u + 3 * v)
+                        + 0.20 * Math.cos(2 * Math.PI * fy * v * u)
+                        + 0.05 * random.nextGaussian();
+                int index = (int) (value * colors);
+                indices[y * width + x] = (byte) Math.max(0, Math.min(colors - 1, index));
+            }
+        }
+        return indices;
+    }
+
+    private static byte[] screen(int width, int height, int mcs, long seed) {
+        Random random = new Random(seed);
+        int colors = 1 << mcs;
+        byte[] indices = new byte[width * height];
+        // Windows:
+        for (int w = 0; w < 8; w++) {
+            int x0 = random.nextInt(width);
+            int y0 = random.nextInt(height);
+            int x1 = Math.min(width, x0 + 1 + random.nextInt(width / 2 + 1));
+            int y1 = Math.min(height, y0 + 1 + random.nextInt(height / 2 + 1));
+            byte color = (byte) random.nextInt(colors);
+            for (int y = y0; y < y1; y++) {
+                for (int x = x0; x < x1; x++) {
+                    indices[y * width + x] = color;
+                }
+            }
+        }
+        // Text, a small alphabet of 6x8 glyphs repeated along lines:
+        long[] glyphs = new long[32];
+        for (int g = 0; g < glyphs.length; g++) {
+            glyphs[g] = random.nextLong();
+        }
+        byte ink = (byte) (colors - 1);
+        for (int line = 0; line + 8 <= height; line += 12) {
+            if (random.nextInt(3) == 0) {
+                continue;
+            }
+            for (int column = 0; column + 6 <= width; column += 6) {
+                long glyph = glyphs[random.nextInt(glyphs.length)];
+                for (int y = 0; y < 8; y++) {
+                    for (int x = 0; x < 6; x++) {
+                        if ((glyph >>> (y * 6 + x) & 1) != 0) {
+                            indices[(line + y) * width + column + x] = ink;
+                        }
+                    }
+                }
+            }
+        }
+        return indices;
+    }
+
+    /** Animation with the global color table of {@code 1 << mcs} entries, every frame covers the whole screen. */
+    static byte[] animation(String content, int width, int height, int mcs, int frames) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ProtoEncoder encoder = new ProtoEncoder(ByteSink.from(bos));
+        encoder.visitHeader(Version.gif89a);
+        LogicalScreenDescriptor lsd = LogicalScreenDescriptor.builder()
+                .setLogicalScreenWidth(width)
+                .setLogicalScreenHeight(height)
+                .setGlobalColorTableUsed(true)
+                .setColorTableSizeBits((byte) (mcs - 1))
+                .build();
+        encoder.visitLogicalScreenDescriptor(lsd);
+        for (int index = 0; index < lsd.colorTableSize(); index++) {
+            encoder.visitGlobalColorTable(index, (byte) index, (byte) index, (byte) index);
+        }
+        ImageDescriptor id = ImageDescriptor.builder()
+                .setImageWidth(width)
+                .setImageHeight(height)
+                .build();
+        for (int frame = 0; frame < frames; frame++) {
+            encoder.visitGraphicsControlExtension(GraphicsControlExtension.builder()
+                    .setDelayTime(4)
+                    .build());
+            ImageEncoder image = new ImageEncoder(DataEncoder::makeEncoder, lsd, id, encoder.visitImage(id));
+            image.visitDataStart();
+            image.visitData(indices(content, width, height, mcs, frame));
+            image.visitDataEnd();
+        }
+        encoder.visitEnd();
+        return bos.toByteArray();
+    }
+}
@@ -0,0 +1,85 @@
+package su.dkzde.genki;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing of an animation through every {@link ByteSink} backend, the stream is copied from an array
+ * as it is, without decoding image data. Reports a {@code bytes} counter, the size of the GIF stream per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SinkBenchmark {
+
+    @Param({"output", "channel", "file"})
+    public String sink;
+
+    @Param({"photo", "screen"})
+    public String content;
+
+    private byte[] gif;
+    private Path target;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        gif = Samples.animation(content, 320, 240, 8, 40);
+        target = Files.createTempFile("genki", ".gif");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(target);
+    }
+
+    private ByteSink openSink() throws IOException {
+        return switch (sink) {
+            case "output" -> ByteSink.from(OutputStream.nullOutputStream());
+            case "channel" -> ByteSink.from(Channels.newChannel(OutputStream.nullOutputStream()), ByteBuffer.allocate(1 << 12));
+            case "file" -> ByteSink.from(target);
+            default -> throw new IllegalArgumentException(sink);
+        };
+    }
+
+    @Benchmark
+    public void copy(Counters counters) throws Exception {
+        ProtoEncoder encoder = new ProtoEncoder(openSink());
+        new ProtoDecoder(ByteStream.from(gif)).accept(encoder);
+        encoder.close();
+        counters.bytes += gif.length;
+    }
+}
@@ -0,0 +1,126 @@
+package su.dkzde.genki;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Container parsing of an animation through every {@link ByteStream} backend.
+ * Every benchmark reports a {@code bytes} counter, the size of the GIF stream per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StreamBenchmark {
+
+    @Param({"array", "input", "channel", "direct", "mapped"})
+    public String source;
+
+    @Param({"photo", "screen"})
+    public String content;
+
+    private byte[] gif;
+    private Path file;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        gif = Samples.animation(content, 320, 240, 8, 40);
+        file = Files.write(Files.createTempFile("genki", ".gif"), gif);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    private ByteStream openSource() throws IOException {
+        return switch (source) {
+            case "array" -> ByteStream.from(gif);
+            case "input" -> ByteStream.from(Files.newInputStream(file));
+            case "channel" -> ByteStream.from(FileChannel.open(file), ByteBuffer.allocate(1 << 12));
+            case "direct" -> ByteStream.from(FileChannel.open(file), ChannelByteStream.Options.builder().build());
+            case "mapped" -> ByteStream.from(FileChannel.open(file));
+            default -> throw new IllegalArgumentException(source);
+        };
+    }
+
+    /** Structure only, image data is skipped. */
+    @Benchmark
+    public int scan(Counters counters) throws IOException {
+        Scanner scanner = new Scanner();
+        try (ProtoDecoder decoder = new ProtoDecoder(openSource())) {
+            decoder.accept(scanner);
+        }
+        counters.bytes += gif.length;
+        return scanner.images;
+    }
+
+    /** Structure and image data, indices of each frame are decoded. */
+    @Benchmark
+    public void decode(Counters counters, Blackhole blackhole) throws IOException {
+        FrameDecoder frames = new FrameDecoder(DataDecoder::makeDirectDecoder, new FrameVisitor() {
+            @Override public void visitColorTable(int index, byte r, byte g, byte b) {}
+            @Override public void visitFrame(ImageDescriptor descriptor, byte[] indices) {
+                blackhole.consume(indices);
+            }
+        });
+        try (ProtoDecoder decoder = new ProtoDecoder(openSource())) {
+            decoder.accept(new Scanner() {
+                @Override public ProtoImageVisitor visitImage(ImageDescriptor descriptor) {
+                    return frames.visitImage(descriptor);
+                }
+            });
+        }
+        counters.bytes += gif.length;
+    }
+
+    private static class Scanner implements ProtoVisitor {
+        int images;
+        @Override public void visitHeader(Version version) {}
+        @Override public @Nullable ProtoApplicationVisitor visitApplication(ApplicationDescriptor descriptor) {
+            return null;
+        }
+        @Override public void visitLogicalScreenDescriptor(LogicalScreenDescriptor descriptor) {}
+        @Override public void visitGraphicsControlExtension(GraphicsControlExtension extension) {}
+        @Override public void visitGlobalColorTable(int index, byte r, byte g, byte b) {}
+        @Override public @Nullable ProtoImageVisitor visitImage(ImageDescriptor descriptor) {
+            images++;
+            return null;
+        }
+        @Override public void visitEnd() {}
+    }
+}
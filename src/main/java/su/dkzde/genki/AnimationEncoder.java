@@ -0,0 +1,308 @@
+package su.dkzde.genki;
+
+import javax.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+/**
+ * Encodes ARGB frames of an animation, reusing palettes across frames instead of quantizing every frame on its own.
+ * The global color table is the palette of the options, or the palette of the first frame. Every frame is checked
+ * against the palettes at hand, the error is estimated on the bins of its {@link ColorHistogram}:
+ * <ul>
+ *     <li>frames the global color table represents well enough are written without a local color table;</li>
+ *     <li>otherwise the last local palette is reused, moved towards colors of the frame by a single k-means step;</li>
+ *     <li>a new local palette is quantized only when neither of them is good enough, as the content has changed.</li>
+ * </ul>
+ * The header, the logical screen and the global color table are written along with the first frame. Usage:
+ * <pre>
+ *     AnimationEncoder animation = new AnimationEncoder(DataEncoder::makeEncoder, Quantizer.makeMedianCut(),
+ *             AnimationEncoder.Options.builder().setLoopCount(0).build(), width, height, new ProtoEncoder(sink));
+ *     animation.visitFrame(extension, argb);
+ *     ...
+ *     animation.visitEnd();
+ * </pre>
+ */
+public final class AnimationEncoder {
+
+    /** Number of rows mapped by a single task. */
+    private static final int BAND_ROWS = 32;
+
+    public record Options(
+            int colors,
+            double threshold,
+            int loopCount,
+            @Nullable Palette globalPalette) {
+
+        public Builder copy() {
+            return new Builder()
+                    .setColors(colors)
+                    .setThreshold(threshold)
+                    .setLoopCount(loopCount)
+                    .setGlobalPalette(globalPalette);
+        }
+
+        /** Defaults to 256 colors, threshold of 12 and no looping extension. */
+        public static Builder builder() {
+            return new Builder();
+        }
+
+        public static final class Builder {
+            private int colors = 256;
+            private double threshold = 12;
+            private int loopCount = -1;
+            private @Nullable Palette globalPalette;
+            private Builder() {}
+            /** Maximum number of entries of quantized palettes. */
+            public Builder setColors(int colors) {
+                this.colors = colors;
+                return this;
+            }
+            /** Largest root mean square distance between pixels and their colors in RGB space a palette may keep. */
+            public Builder setThreshold(double threshold) {
+                this.threshold = threshold;
+                return this;
+            }
+            /** Loop count of the NETSCAPE application extension, {@code 0} loops forever, {@code -1} omits it. */
+            public Builder setLoopCount(int loopCount) {
+                this.loopCount = loopCount;
+                return this;
+            }
+            /** Global color table, derived from the first frame if none is given. */
+            public Builder setGlobalPalette(@Nullable Palette palette) {
+                this.globalPalette = palette;
+                return this;
+            }
+            public Options build() {
+                if (colors < 2 || colors > 256 || threshold < 0 || loopCount < -1 || loopCount > 0xffff) {
+                    throw new IllegalArgumentException();
+                }
+                return new Options(
+                        colors,
+                        threshold,
+                        loopCount,
+                        globalPalette);
+            }
+        }
+    }
+
+    private final ProtoVisitor backend;
+    private final Supplier<DataEncoder> supplier;
+    private final Quantizer quantizer;
+    private final Executor executor;
+    private final Options options;
+    private final int width;
+    private final int height;
+
+    private final ColorHistogram histogram = new ColorHistogram();
+    /** Occupied bins of the current frame with their mean colors and the closest entries of the last palette assigned. */
+    private int[] bins = new int[0];
+    private int[] means = new int[0];
+    private int[] nearest = new int[0];
+
+    private LogicalScreenDescriptor lsd;
+    private @Nullable Palette global;
+    private @Nullable Palette local;
+
+    public AnimationEncoder(
+            Supplier<DataEncoder> supplier,
+            Quantizer quantizer,
+            Options options,
+            int width,
+            int height,
+            ProtoVisitor visitor) {
+
+        this(supplier, quantizer, options, ForkJoinPool.commonPool(), width, height, visitor);
+    }
+
+    /** @param executor runs mapping of pixels to indices of the frame band by band, while previous bands are encoded */
+    public AnimationEncoder(
+            Supplier<DataEncoder> supplier,
+            Quantizer quantizer,
+            Options options,
+            Executor executor,
+            int width,
+            int height,
+            ProtoVisitor visitor) {
+
+        this.backend = visitor;
+        this.executor = executor;
+        this.supplier = supplier;
+        this.quantizer = quantizer;
+        this.options = options;
+        this.width = width;
+        this.height = height;
+        this.global = options.globalPalette();
+    }
+
+    /**
+     * @param extension graphics control extension of the frame, if any; transparency fields are set
+     *                  when the frame has transparent pixels
+     * @param argb {@code width * height} pixels of the frame, row by row
+     */
+    public void visitFrame(@Nullable GraphicsControlExtension extension, int[] argb) {
+        if (argb.length != width * height) {
+            throw new IllegalArgumentException();
+        }
+        histogram.clear();
+        histogram.add(argb);
+        collectBins();
+        // A global palette quantized from the first frame represents it as well as a local one would:
+        boolean derived = false;
+        if (lsd == null) {
+            if (global == null) {
+                global = quantizer.palette(histogram, options.colors());
+                derived = true;
+            }
+            writeScreen();
+        }
+
+        Palette palette;
+        boolean localColorTableUsed;
+        if (derived || error(global, assign(global)) <= options.threshold()) {
+            palette = global;
+            localColorTableUsed = false;
+        } else {
+            int[] assignment = local != null ? assign(local) : null;
+            if (assignment != null && error(local, assignment) <= options.threshold()) {
+                local = refine(local, assignment);
+            } else {
+                local = quantizer.palette(histogram, options.colors());
+            }
+            palette = local;
+            localColorTableUsed = true;
+        }
+
+        if (palette.transparentIndex() >= 0 && histogram.transparent() > 0) {
+            GraphicsControlExtension.Builder builder = extension != null
+                    ? extension.copy()
+                    : GraphicsControlExtension.builder();
+            extension = builder
+                    .setTransparencyFlag(true)
+                    .setTransparencyIndex(palette.transparentIndex())
+                    .build();
+        }
+        if (extension != null) {
+            backend.visitGraphicsControlExtension(extension);
+        }
+        ImageDescriptor descriptor = ImageDescriptor.builder()
+                .setImageWidth(width)
+                .setImageHeight(height)
+                .setLocalColorTableUsed(localColorTableUsed)
+                .setColorTableSizeBits(localColorTableUsed ? palette.colorTableSizeBits() : (byte) 0)
+                .build();
+        ProtoImageVisitor image = backend.visitImage(descriptor);
+        if (image == null) {
+            return;
+        }
+        ImageEncoder encoder = new ImageEncoder(supplier, lsd, descriptor, image);
+        if (localColorTableUsed) {
+            palette.visitColorTable(encoder);
+        }
+        encoder.visitDataStart();
+        palette.mapper().visitData(argb, width, encoder, executor, Math.max(1, height / BAND_ROWS));
+        encoder.visitDataEnd();
+    }
+
+    /** Write the trailer. */
+    public void visitEnd() {
+        backend.visitEnd();
+    }
+
+    private void writeScreen() {
+        backend.visitHeader(Version.gif89a);
+        lsd = LogicalScreenDescriptor.builder()
+                .setLogicalScreenWidth(width)
+                .setLogicalScreenHeight(height)
+                .setGlobalColorTableUsed(true)
+                .setColorResolution((byte) 7)
+                .setColorTableSizeBits(global.colorTableSizeBits())
+                .build();
+        backend.visitLogicalScreenDescriptor(lsd);
+        global.visitGlobalColorTable(backend);
+        if (options.loopCount() >= 0) {
+            ProtoApplicationVisitor application = backend.visitApplication(new ApplicationDescriptor(
+                    "NETSCAPE".getBytes(StandardCharsets.US_ASCII),
+                    "2.0".getBytes(StandardCharsets.US_ASCII)));
+            if (application != null) {
+                application.visitDataBlock(new byte[] {
+                        0x01,
+                        (byte) options.loopCount(),
+                        (byte) (options.loopCount() >> 8)});
+                application.visitEnd();
+            }
+        }
+    }
+
+    private void collectBins() {
+        bins = Quantization.occupied(histogram);
+        if (means.length < bins.length) {
+            means = new int[bins.length];
+            nearest = new int[bins.length];
+        }
+        for (int j = 0; j < bins.length; j++) {
+            means[j] = histogram.mean(bins[j]);
+        }
+    }
+
+    /**
+     * @return closest entries of the palette to the mean colors of the occupied bins, valid until the next call
+     */
+    private int[] assign(Palette palette) {
+        PaletteMapper mapper = palette.mapper();
+        for (int j = 0; j < bins.length; j++) {
+            nearest[j] = mapper.nearest(means[j]);
+        }
+        return nearest;
+    }
+
+    /**
+     * @param assignment closest entries of the palette to the bins, as returned by {@link #assign}
+     * @return root mean square distance between colors of the frame and their closest colors of the palette,
+     * infinite if the palette has no entry for transparent pixels of the frame
+     */
+    private double error(Palette palette, int[] assignment) {
+        if (histogram.transparent() > 0 && palette.transparentIndex() < 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double sum = 0;
+        long count = 0;
+        int[] colors = palette.colors();
+        for (int j = 0; j < bins.length; j++) {
+            int index = assignment[j];
+            int dr = (means[j] >> 16 & 0xff) - (colors[index] >> 16 & 0xff);
+            int dg = (means[j] >> 8 & 0xff) - (colors[index] >> 8 & 0xff);
+            int db = (means[j] & 0xff) - (colors[index] & 0xff);
+            long n = histogram.count(bins[j]);
+            sum += (double) n * (dr * dr + dg * dg + db * db);
+            count += n;
+        }
+        return count > 0 ? Math.sqrt(sum / count) : 0;
+    }
+
+    /** Move every entry to the mean of the colors assigned to it, the same palette is returned if none moves. */
+    private Palette refine(Palette palette, int[] assignment) {
+        int size = palette.size();
+        long[] counts = new long[size];
+        long[] sums = new long[3 * size];
+        for (int j = 0; j < bins.length; j++) {
+            int index = assignment[j];
+            counts[index] += histogram.count(bins[j]);
+            for (int channel = 0; channel < 3; channel++) {
+                sums[3 * index + channel] += histogram.sum(bins[j], channel);
+            }
+        }
+        int[] colors = palette.colors();
+        boolean moved = false;
+        for (int index = 0; index < size; index++) {
+            if (counts[index] > 0 && index != palette.transparentIndex()) {
+                int mean = Quantization.mean(counts[index], sums[3 * index], sums[3 * index + 1], sums[3 * index + 2]);
+                moved |= mean != colors[index];
+                colors[index] = mean;
+            }
+        }
+        // The palette is kept along with its mapper unless an entry has moved:
+        return moved ? new Palette(colors, palette.transparentIndex()) : palette;
+    }
+}
@@ -1,12 +1,17 @@
 package su.dkzde.genki;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
 public class ArrayByteStream implements ByteStream {
 
     private final byte[] backend;
+    private final ByteBuffer view;
     private int cursor = 0;
 
     public ArrayByteStream(byte[] backend) {
         this.backend = backend;
+        this.view = ByteBuffer.wrap(backend).asReadOnlyBuffer();
     }
 
     @Override
@@ -32,6 +37,56 @@ public class ArrayByteStream implements ByteStream {
         return sequence;
     }
 
+    @Override
+    public ByteBuffer nextByteSlice(int length) throws DataChannelException {
+        if (backend.length - cursor >= length) {
+            view.limit(cursor + length).position(cursor);
+            cursor += length;
+            return view;
+        } else {
+            throw new DataChannelException();
+        }
+    }
+
+    @Override
+    public void skip(int length) throws DataChannelException {
+        if (backend.length - cursor >= length) {
+            cursor += length;
+        } else {
+            throw new DataChannelException();
+        }
+    }
+
+    @Override
+    public void transferDataBlocks(ByteSink target) throws IOException {
+        int end = Blocks.scan(view.clear(), cursor, backend.length);
+        if (end == backend.length || backend[end] != 0) {
+            throw new DataChannelException();
+        }
+        view.limit(end).position(cursor);
+        cursor = end + 1;
+        target.nextByteSequence(view);
+    }
+
+    @Override
+    public long position() {
+        return cursor;
+    }
+
+    @Override
+    public boolean seekable() {
+        return true;
+    }
+
+    @Override
+    public void seek(long position) throws DataChannelException {
+        if (position >= 0 && position <= backend.length) {
+            cursor = (int) position;
+        } else {
+            throw new DataChannelException();
+        }
+    }
+
     @Override
     public int nextUnsignedByte() throws DataChannelException {
         return Byte.toUnsignedInt(nextByte());
@@ -0,0 +1,129 @@
+package su.dkzde.genki;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.AsynchronousFileChannel;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Writes a file through an asynchronous channel with two buffers: once one is full, it is written in the background
+ * while the other one is filled, so disk writes overlap with encoding. The file is written from its beginning.
+ */
+public class AsyncByteSink implements ByteSink {
+
+    private final AsynchronousFileChannel backend;
+    private ByteBuffer buffer;
+    private ByteBuffer behind;
+
+    /** Write of {@code behind} at file offset {@code pendingOffset}, or {@code null} if there is none. */
+    private @Nullable Future<Integer> pending;
+    private long pendingOffset;
+    /** File offset of the first byte of {@code buffer}. */
+    private long offset = 0;
+
+    /** @param bufferSize number of bytes passed to the channel by a single write */
+    public AsyncByteSink(AsynchronousFileChannel backend, int bufferSize) {
+        this.backend = backend;
+        this.buffer = ByteBuffer.allocate(bufferSize).order(ByteOrder.LITTLE_ENDIAN);
+        this.behind = ByteBuffer.allocate(bufferSize).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Override
+    public void init() {}
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+            await();
+        } finally {
+            backend.close();
+        }
+    }
+
+    /** Wait until the background write completes, bytes the channel did not take are written again. */
+    private void await() throws IOException {
+        while (pending != null) {
+            int count;
+            try {
+                count = pending.get();
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            } catch (ExecutionException exception) {
+                pending = null;
+                if (exception.getCause() instanceof IOException cause) {
+                    throw cause;
+                } else {
+                    throw new IOException(exception.getCause());
+                }
+            }
+            pendingOffset += count;
+            pending = behind.hasRemaining() ? backend.write(behind, pendingOffset) : null;
+        }
+    }
+
+    /** Hand the filled buffer over to a background write and continue with the other one. */
+    private void flush() throws IOException {
+        await();
+        buffer.flip();
+        ByteBuffer swap = behind;
+        behind = buffer;
+        buffer = swap.clear();
+        pendingOffset = offset;
+        offset += behind.remaining();
+        if (behind.hasRemaining()) {
+            pending = backend.write(behind, pendingOffset);
+        }
+    }
+
+    @Override
+    public void nextByteSequence(byte[] sequence) throws IOException {
+        int from = 0;
+        while (from < sequence.length) {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            int n = Math.min(buffer.remaining(), sequence.length - from);
+            buffer.put(sequence, from, n);
+            from += n;
+        }
+    }
+
+    @Override
+    public void nextByteSequence(ByteBuffer sequence) throws IOException {
+        int from = sequence.position();
+        int to = sequence.limit();
+        while (from < to) {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            int n = Math.min(buffer.remaining(), to - from);
+            buffer.put(buffer.position(), sequence, from, n);
+            buffer.position(buffer.position() + n);
+            from += n;
+        }
+    }
+
+    @Override
+    public void nextUnsignedShort(int field) throws IOException {
+        if (buffer.remaining() >= 2) {
+            buffer.putShort((short) field);
+        } else {
+            nextUnsignedByte(field);
+            nextUnsignedByte(field >> 8);
+        }
+    }
+
+    @Override
+    public void nextUnsignedByte(int field) throws IOException {
+        if (!buffer.hasRemaining()) {
+            flush();
+        }
+        buffer.put((byte) field);
+    }
+}
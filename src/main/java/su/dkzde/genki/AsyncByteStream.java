@@ -0,0 +1,194 @@
+package su.dkzde.genki;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.AsynchronousFileChannel;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Reads a file through an asynchronous channel with two buffers: while one is consumed, the next part of the file
+ * is read into the other one, so disk reads overlap with decoding. Every buffer keeps {@code HEADROOM} bytes
+ * in front of the data read into it, unread bytes of the consumed buffer are moved there when buffers are swapped,
+ * so slices and fields spanning two reads stay contiguous without copying whole buffers.
+ */
+public class AsyncByteStream implements ByteStream {
+
+    /** Room for unread bytes carried over from the previous buffer, slices up to this length are zero-copy. */
+    private static final int HEADROOM = 256;
+
+    private final AsynchronousFileChannel backend;
+    private ByteBuffer buffer;
+    private ByteBuffer ahead;
+    private final ByteBuffer view;
+    private final ByteBuffer aheadView;
+    private ByteBuffer currentView;
+
+    /** Read into {@code ahead} at file offset {@code pendingOffset}, or {@code null} once the end of file is reached. */
+    private @Nullable Future<Integer> pending;
+    private long pendingOffset;
+    /** File offset of {@code buffer.limit()}. */
+    private long bufferEnd;
+    /** Index of the first valid byte of {@code buffer}. */
+    private int low;
+
+    /** @param bufferSize number of bytes requested from the channel by a single read */
+    public AsyncByteStream(AsynchronousFileChannel backend, int bufferSize) {
+        this.backend = backend;
+        this.buffer = ByteBuffer.allocate(HEADROOM + bufferSize).order(ByteOrder.LITTLE_ENDIAN);
+        this.ahead = ByteBuffer.allocate(HEADROOM + bufferSize).order(ByteOrder.LITTLE_ENDIAN);
+        this.view = buffer.asReadOnlyBuffer();
+        this.aheadView = ahead.asReadOnlyBuffer();
+        this.currentView = view;
+    }
+
+    @Override
+    public void init() {
+        restart(0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (pending != null) {
+            pending.cancel(false);
+        }
+        backend.close();
+    }
+
+    /** Discard buffered bytes and read the file starting at {@code offset}. */
+    private void restart(long offset) {
+        if (pending != null) {
+            try {
+                await();
+            } catch (IOException ignored) {
+                // The result of the read is discarded anyway.
+            }
+        }
+        buffer.limit(HEADROOM).position(HEADROOM);
+        low = HEADROOM;
+        bufferEnd = offset;
+        readAhead(offset);
+    }
+
+    private void readAhead(long offset) {
+        ahead.limit(ahead.capacity()).position(HEADROOM);
+        pendingOffset = offset;
+        pending = backend.read(ahead, offset);
+    }
+
+    private int await() throws IOException {
+        try {
+            return pending.get();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException exception) {
+            if (exception.getCause() instanceof IOException cause) {
+                throw cause;
+            } else {
+                throw new IOException(exception.getCause());
+            }
+        } finally {
+            pending = null;
+        }
+    }
+
+    /** Make at least {@code length} bytes available in {@code buffer}, {@code length} must not exceed {@code HEADROOM}. */
+    private void ensure(int length) throws IOException {
+        while (buffer.remaining() < length) {
+            if (pending == null) {
+                throw new DataChannelException();
+            }
+            int count = await();
+            if (count <= 0) {
+                continue;
+            }
+            int leftover = buffer.remaining();
+            ahead.limit(HEADROOM + count).position(HEADROOM - leftover);
+            ahead.put(HEADROOM - leftover, buffer, buffer.position(), leftover);
+            low = HEADROOM - leftover;
+            bufferEnd = pendingOffset + count;
+
+            ByteBuffer swap = buffer;
+            buffer = ahead;
+            ahead = swap;
+            currentView = currentView == view ? aheadView : view;
+            readAhead(bufferEnd);
+        }
+    }
+
+    @Override
+    public byte nextByte() throws IOException {
+        ensure(1);
+        return buffer.get();
+    }
+
+    @Override
+    public byte[] nextByteSequence(byte[] sequence) throws IOException {
+        int offset = 0;
+        while (offset < sequence.length) {
+            ensure(1);
+            int n = Math.min(buffer.remaining(), sequence.length - offset);
+            buffer.get(sequence, offset, n);
+            offset += n;
+        }
+        return sequence;
+    }
+
+    @Override
+    public ByteBuffer nextByteSlice(int length) throws IOException {
+        if (length > HEADROOM) {
+            return ByteStream.super.nextByteSlice(length);
+        }
+        ensure(length);
+        int position = buffer.position();
+        currentView.limit(position + length).position(position);
+        buffer.position(position + length);
+        return currentView;
+    }
+
+    @Override
+    public void skip(int length) throws IOException {
+        if (buffer.remaining() >= length) {
+            buffer.position(buffer.position() + length);
+        } else {
+            seek(position() + length);
+        }
+    }
+
+    @Override
+    public long position() {
+        return bufferEnd - buffer.remaining();
+    }
+
+    @Override
+    public boolean seekable() {
+        return true;
+    }
+
+    @Override
+    public void seek(long position) throws IOException {
+        long start = bufferEnd - (buffer.limit() - low);
+        if (position >= start && position <= bufferEnd) {
+            buffer.position(buffer.limit() - (int) (bufferEnd - position));
+        } else if (position >= 0 && position <= backend.size()) {
+            restart(position);
+        } else {
+            throw new DataChannelException();
+        }
+    }
+
+    @Override
+    public int nextUnsignedByte() throws IOException {
+        return Byte.toUnsignedInt(nextByte());
+    }
+
+    @Override
+    public int nextUnsignedShort() throws IOException {
+        ensure(2);
+        return Short.toUnsignedInt(buffer.getShort());
+    }
+}
@@ -0,0 +1,31 @@
+package su.dkzde.genki;
+
+import java.nio.ByteBuffer;
+
+/** Helpers for data sub-blocks passed around as buffer views. */
+final class Blocks {
+    private Blocks() {}
+
+    /** @return copy of remaining bytes of the buffer, position of the buffer is not changed */
+    static byte[] copy(ByteBuffer block) {
+        byte[] out = new byte[block.remaining()];
+        block.get(block.position(), out);
+        return out;
+    }
+
+    /**
+     * Walk data sub-blocks stored from {@code from}, as long as whole sub-blocks end before {@code limit}.
+     * @return offset of the block terminator, or of the first sub-block that does not end before the limit
+     */
+    static int scan(ByteBuffer bytes, int from, int limit) {
+        int offset = from;
+        while (offset < limit) {
+            int size = Byte.toUnsignedInt(bytes.get(offset));
+            if (size == 0 || offset + 1 + size > limit) {
+                break;
+            }
+            offset += 1 + size;
+        }
+        return offset;
+    }
+}
@@ -3,6 +3,7 @@ package su.dkzde.genki;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
 import java.nio.channels.FileChannel;
 import java.nio.channels.WritableByteChannel;
 import java.nio.file.Path;
@@ -16,6 +17,11 @@ public interface ByteSink extends AutoCloseable {
 
     void nextByteSequence(byte[] sequence) throws IOException;
 
+    /** Write remaining bytes of the buffer without changing its position. */
+    default void nextByteSequence(ByteBuffer sequence) throws IOException {
+        nextByteSequence(Blocks.copy(sequence));
+    }
+
     void nextUnsignedShort(int field) throws IOException;
 
     void nextUnsignedByte(int field) throws IOException;
@@ -29,6 +35,11 @@ public interface ByteSink extends AutoCloseable {
         return new ChannelByteSink(channel, buffer);
     }
 
+    /** Writes behind the encoder while it produces the next bytes. */
+    static ByteSink from(AsynchronousFileChannel channel, int bufferSize) {
+        return new AsyncByteSink(channel, bufferSize);
+    }
+
     static ByteSink from(OutputStream stream) {
         return new OutputByteSink(stream);
     }
@@ -3,6 +3,7 @@ package su.dkzde.genki;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
 import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Path;
@@ -18,19 +19,86 @@ public interface ByteStream extends AutoCloseable {
 
     byte[] nextByteSequence(byte[] sequence) throws IOException, DataChannelException;
 
+    /**
+     * @return read-only view of the next {@code length} bytes as remaining bytes of the buffer;
+     * implementations may reuse the view and the memory behind it, so it is only valid until the next read
+     */
+    default ByteBuffer nextByteSlice(int length) throws IOException, DataChannelException {
+        return ByteBuffer.wrap(nextByteSequence(new byte[length])).asReadOnlyBuffer();
+    }
+
+    /** Skip the next {@code length} bytes, implementations backed by random access storage move the position instead of reading. */
+    default void skip(int length) throws IOException, DataChannelException {
+        nextByteSlice(length);
+    }
+
+    /**
+     * Copy a sequence of data sub-blocks to the sink as it is stored, size bytes included.
+     * The block terminator is consumed but not copied. Streams holding many sub-blocks in memory pass them on at once.
+     */
+    default void transferDataBlocks(ByteSink target) throws IOException, DataChannelException {
+        int bs = nextUnsignedByte();
+        while (bs > 0) {
+            target.nextUnsignedByte(bs);
+            target.nextByteSequence(nextByteSlice(bs));
+            bs = nextUnsignedByte();
+        }
+    }
+
+    /**
+     * @return number of bytes consumed since the start of the stream, as needed by {@link FrameIndex};
+     * streams that do not keep track of it throw {@link UnsupportedOperationException}
+     */
+    default long position() {
+        throw new UnsupportedOperationException();
+    }
+
+    /** @return whether the stream supports {@link #seek(long)}, as streams backed by random access storage do */
+    default boolean seekable() {
+        return false;
+    }
+
+    /**
+     * Move to an absolute position, so that the next read returns the byte at that offset from the start of the stream.
+     * @throws IOException if the stream is not {@link #seekable()}
+     */
+    default void seek(long position) throws IOException, DataChannelException {
+        throw new IOException("stream does not support seeking");
+    }
+
     int nextUnsignedByte() throws IOException, DataChannelException;
 
     int nextUnsignedShort() throws IOException, DataChannelException;
 
+    /** Files that fit into a single memory mapping are mapped, larger ones are read through a 64 KiB direct buffer. */
     static ByteStream from(Path path) throws IOException {
         FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
-        return from(channel, ByteBuffer.allocate(1 << 12));
+        if (channel.size() <= Integer.MAX_VALUE) {
+            return from(channel);
+        } else {
+            return from(channel, ChannelByteStream.Options.builder()
+                    .setReadAhead(ChannelByteStream.ReadAhead.FILL)
+                    .build());
+        }
+    }
+
+    static ByteStream from(FileChannel channel) {
+        return new MappedByteStream(channel);
     }
 
     static ByteStream from(ReadableByteChannel channel, ByteBuffer buffer) {
         return new ChannelByteStream(channel, buffer);
     }
 
+    static ByteStream from(ReadableByteChannel channel, ChannelByteStream.Options options) {
+        return new ChannelByteStream(channel, options);
+    }
+
+    /** Reads ahead of the decoder while it processes the bytes read so far. */
+    static ByteStream from(AsynchronousFileChannel channel, int bufferSize) {
+        return new AsyncByteStream(channel, bufferSize);
+    }
+
     static ByteStream from(InputStream stream) {
         return new InputByteStream(stream);
     }
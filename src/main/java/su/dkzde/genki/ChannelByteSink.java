@@ -20,11 +20,16 @@ public class ChannelByteSink implements ByteSink {
 
     @Override
     public void close() throws IOException {
+        drain();
+        backend.close();
+    }
+
+    private void drain() throws IOException {
         buffer.flip();
         while (buffer.hasRemaining()) {
             backend.write(buffer);
         }
-        backend.close();
+        buffer.clear();
     }
 
     @Override
@@ -39,6 +44,24 @@ public class ChannelByteSink implements ByteSink {
         }
     }
 
+    /** Sequences longer than the buffer are written to the channel directly, without being copied. */
+    @Override
+    public void nextByteSequence(ByteBuffer sequence) throws IOException {
+        int length = sequence.remaining();
+        if (buffer.remaining() < length) {
+            drain();
+            if (buffer.remaining() < length) {
+                ByteBuffer bytes = sequence.duplicate();
+                while (bytes.hasRemaining()) {
+                    backend.write(bytes);
+                }
+                return;
+            }
+        }
+        buffer.put(buffer.position(), sequence, sequence.position(), length);
+        buffer.position(buffer.position() + length);
+    }
+
     @Override
     public void nextUnsignedShort(int field) throws IOException {
         if (buffer.remaining() >= 2) {
@@ -4,15 +4,95 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
 
+/**
+ * Reads a blocking channel through a buffer. Channels may return fewer bytes than requested by a single read,
+ * as sockets and pipes do, so the channel is read repeatedly until the bytes a field needs are buffered.
+ */
 public class ChannelByteStream implements ByteStream {
 
+    /** How much is read from the channel once the buffered bytes run short. */
+    public enum ReadAhead {
+        /** Read until the requested bytes are buffered, so the stream never waits for bytes it does not need yet. */
+        DEMAND,
+        /** Read until the buffer is full or the end of the channel is reached, the fewest reads for files. */
+        FILL,
+    }
+
+    public record Options(
+            int bufferSize,
+            boolean direct,
+            ReadAhead readAhead) {
+
+        public Builder copy() {
+            return new Builder()
+                    .setBufferSize(bufferSize)
+                    .setDirect(direct)
+                    .setReadAhead(readAhead);
+        }
+
+        /** Defaults to a direct buffer of 64 KiB filled on demand. */
+        public static Builder builder() {
+            return new Builder();
+        }
+
+        public static final class Builder {
+            private int bufferSize = 1 << 16;
+            private boolean direct = true;
+            private ReadAhead readAhead = ReadAhead.DEMAND;
+            private Builder() {}
+            public Builder setBufferSize(int size) {
+                this.bufferSize = size;
+                return this;
+            }
+            public Builder setDirect(boolean direct) {
+                this.direct = direct;
+                return this;
+            }
+            public Builder setReadAhead(ReadAhead readAhead) {
+                this.readAhead = readAhead;
+                return this;
+            }
+            public Options build() {
+                // Every field but byte sequences must fit into the buffer.
+                if (bufferSize < 2) {
+                    throw new IllegalArgumentException();
+                }
+                return new Options(
+                        bufferSize,
+                        direct,
+                        readAhead);
+            }
+        }
+
+        ByteBuffer allocate() {
+            return direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+        }
+    }
+
     private final ByteBuffer buffer;
+    private final ByteBuffer view;
     private final ReadableByteChannel backend;
+    private final ReadAhead readAhead;
+    /** Position of seekable channels at {@link #init()}, the start of the stream. */
+    private long origin = 0;
+    /** Number of bytes read from the channel since the start of the stream, the buffered ones included. */
+    private long fetched = 0;
 
     public ChannelByteStream(ReadableByteChannel source, ByteBuffer buffer) {
+        this(source, buffer, ReadAhead.DEMAND);
+    }
+
+    public ChannelByteStream(ReadableByteChannel source, Options options) {
+        this(source, options.allocate(), options.readAhead());
+    }
+
+    private ChannelByteStream(ReadableByteChannel source, ByteBuffer buffer, ReadAhead readAhead) {
         this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        this.view = buffer.asReadOnlyBuffer();
         this.backend = source;
+        this.readAhead = readAhead;
     }
 
     @Override
@@ -22,40 +102,150 @@ public class ChannelByteStream implements ByteStream {
 
     @Override
     public void init() throws IOException {
-        backend.read(buffer);
-        buffer.flip();
+        if (backend instanceof SeekableByteChannel channel) {
+            origin = channel.position();
+        }
+        fetched = 0;
+        buffer.clear().flip();
+    }
+
+    private int fill() throws IOException {
+        int count = backend.read(buffer);
+        if (count > 0) {
+            fetched += count;
+        }
+        return count;
+    }
+
+    /** Buffer at least {@code length} bytes, which must not exceed the capacity of the buffer. */
+    private void require(int length) throws IOException {
+        if (buffer.remaining() >= length) {
+            return;
+        }
+        buffer.compact();
+        try {
+            while (buffer.position() < length) {
+                if (fill() < 0) {
+                    throw new DataChannelException();
+                }
+            }
+            if (readAhead == ReadAhead.FILL) {
+                while (buffer.hasRemaining() && fill() > 0) {
+                    // Keep reading until the buffer is full.
+                }
+            }
+        } finally {
+            buffer.flip();
+        }
     }
 
     @Override
     public byte nextByte() throws IOException {
-        if (buffer.hasRemaining()) {
-            return buffer.get();
-        } else {
-            buffer.clear();
-            if (backend.read(buffer) > 0) {
-                buffer.flip();
-                return buffer.get();
+        require(1);
+        return buffer.get();
+    }
+
+    @Override
+    public byte[] nextByteSequence(byte[] sequence) throws IOException {
+        int offset = 0;
+        while (offset < sequence.length) {
+            require(1);
+            int n = Math.min(buffer.remaining(), sequence.length - offset);
+            buffer.get(sequence, offset, n);
+            offset += n;
+        }
+        return sequence;
+    }
+
+    /** Slices longer than the buffer are copied. */
+    @Override
+    public ByteBuffer nextByteSlice(int length) throws IOException {
+        if (length > buffer.capacity()) {
+            return ByteStream.super.nextByteSlice(length);
+        }
+        require(length);
+        int position = buffer.position();
+        view.limit(position + length).position(position);
+        buffer.position(position + length);
+        return view;
+    }
+
+    /** Whole sub-blocks are passed on straight from the buffer, a single write per buffer fill. */
+    @Override
+    public void transferDataBlocks(ByteSink target) throws IOException {
+        while (true) {
+            int position = buffer.position();
+            int end = Blocks.scan(buffer, position, buffer.limit());
+            if (end > position) {
+                view.limit(end).position(position);
+                buffer.position(end);
+                target.nextByteSequence(view);
+            }
+            if (end < buffer.limit() && buffer.get(end) == 0) {
+                buffer.position(end + 1);
+                return;
+            }
+            require(1);
+            int bs = Byte.toUnsignedInt(buffer.get(buffer.position()));
+            if (1 + bs <= buffer.capacity()) {
+                require(1 + bs);
             } else {
-                throw new DataChannelException();
+                // The sub-block does not fit into the buffer:
+                buffer.get();
+                target.nextUnsignedByte(bs);
+                target.nextByteSequence(nextByteSlice(bs));
             }
         }
     }
 
+    /** Bytes that are not buffered yet are skipped by moving the position of seekable channels. */
     @Override
-    public byte[] nextByteSequence(byte[] sequence) throws IOException {
-        if (buffer.remaining() >= sequence.length) {
-            buffer.get(sequence);
-            return sequence;
+    public void skip(int length) throws IOException {
+        if (buffer.remaining() >= length) {
+            buffer.position(buffer.position() + length);
+        } else if (backend instanceof SeekableByteChannel channel) {
+            long target = channel.position() + length - buffer.remaining();
+            if (target > channel.size()) {
+                throw new DataChannelException();
+            }
+            channel.position(target);
+            fetched = target - origin;
+            buffer.clear().flip();
         } else {
-            buffer.compact();
-            backend.read(buffer);
-            buffer.flip();
-            if (buffer.remaining() >= sequence.length) {
-                buffer.get(sequence);
-                return sequence;
-            } else {
+            while (length > buffer.remaining()) {
+                length -= buffer.remaining();
+                buffer.position(buffer.limit());
+                require(1);
+            }
+            buffer.position(buffer.position() + length);
+        }
+    }
+
+    @Override
+    public long position() {
+        return fetched - buffer.remaining();
+    }
+
+    /** Seekable channels are, others only within the buffered bytes. */
+    @Override
+    public boolean seekable() {
+        return backend instanceof SeekableByteChannel;
+    }
+
+    /** Positions within the buffered bytes are reached without touching the channel. */
+    @Override
+    public void seek(long position) throws IOException {
+        if (position <= fetched && position >= fetched - buffer.limit()) {
+            buffer.position(buffer.limit() - (int) (fetched - position));
+        } else if (backend instanceof SeekableByteChannel channel) {
+            if (position < 0 || origin + position > channel.size()) {
                 throw new DataChannelException();
             }
+            channel.position(origin + position);
+            fetched = position;
+            buffer.clear().flip();
+        } else {
+            throw new IOException("channel does not support seeking");
         }
     }
 
@@ -65,17 +255,7 @@ public class ChannelByteStream implements ByteStream {
     }
 
     @Override public int nextUnsignedShort() throws IOException {
-        if (buffer.remaining() >= 2) {
-            return Short.toUnsignedInt(buffer.getShort());
-        } else {
-            buffer.compact();
-            backend.read(buffer);
-            buffer.flip();
-            if (buffer.remaining() >= 2) {
-                return Short.toUnsignedInt(buffer.getShort());
-            } else {
-                throw new DataChannelException();
-            }
-        }
+        require(2);
+        return Short.toUnsignedInt(buffer.getShort());
     }
 }
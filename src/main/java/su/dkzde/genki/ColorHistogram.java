@@ -0,0 +1,137 @@
+package su.dkzde.genki;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Counts colors of ARGB pixels for a {@link Quantizer}. Channels are truncated to {@code bits} bits to select a bin,
+ * so the histogram takes a fixed amount of memory whatever the number of distinct colors: 2<sup>3 * bits</sup> bins
+ * of 32 bytes each, 1 MiB at the default precision. Every bin keeps the number of its pixels and the sums
+ * of their channels, so colors derived from bins are exact means. Pixels with alpha below 128 are counted
+ * as transparent. Histograms of several frames may be merged to build a palette shared by all of them.
+ */
+public final class ColorHistogram {
+
+    /** Default number of bits per channel, 32768 bins. */
+    public static final int DEFAULT_BITS = 5;
+
+    private final int bits;
+    private final long[] counts;
+    /** Sums of red, green and blue channels of every bin. */
+    private final long[] sums;
+    private long transparent = 0;
+
+    public ColorHistogram() {
+        this(DEFAULT_BITS);
+    }
+
+    /** @param bits number of bits per channel selecting a bin, from 1 to 6 */
+    public ColorHistogram(int bits) {
+        if (bits < 1 || bits > 6) {
+            throw new IllegalArgumentException();
+        }
+        this.bits = bits;
+        this.counts = new long[1 << 3 * bits];
+        this.sums = new long[3 << 3 * bits];
+    }
+
+    public void add(int[] argb) {
+        add(argb, 0, argb.length);
+    }
+
+    public void add(int[] argb, int from, int to) {
+        int shift = 8 - bits;
+        for (int j = from; j < to; j++) {
+            int color = argb[j];
+            if (color >>> 24 < 0x80) {
+                transparent++;
+                continue;
+            }
+            int r = color >> 16 & 0xff;
+            int g = color >> 8 & 0xff;
+            int b = color & 0xff;
+            int bin = (r >> shift) << 2 * bits | (g >> shift) << bits | b >> shift;
+            counts[bin]++;
+            sums[3 * bin] += r;
+            sums[3 * bin + 1] += g;
+            sums[3 * bin + 2] += b;
+        }
+    }
+
+    /**
+     * Count pixels concurrently: they are split into {@code tiles} ranges, each one counted into its own histogram
+     * as a separate task on the executor, the last one on the calling thread. Histograms are merged into this one.
+     */
+    public void add(int[] argb, Executor executor, int tiles) {
+        if (tiles < 1) {
+            throw new IllegalArgumentException();
+        }
+        int size = (argb.length + tiles - 1) / tiles;
+        List<CompletableFuture<ColorHistogram>> tasks = new ArrayList<>();
+        int from = 0;
+        for (; from + size < argb.length; from += size) {
+            int start = from;
+            tasks.add(CompletableFuture.supplyAsync(() -> {
+                ColorHistogram histogram = new ColorHistogram(bits);
+                histogram.add(argb, start, start + size);
+                return histogram;
+            }, executor));
+        }
+        add(argb, from, argb.length);
+        for (CompletableFuture<ColorHistogram> task : tasks) {
+            add(Tasks.join(task));
+        }
+    }
+
+    /** Merge counts of a histogram of the same precision. */
+    public void add(ColorHistogram histogram) {
+        if (histogram.bits != bits) {
+            throw new IllegalArgumentException();
+        }
+        for (int bin = 0; bin < counts.length; bin++) {
+            counts[bin] += histogram.counts[bin];
+        }
+        for (int j = 0; j < sums.length; j++) {
+            sums[j] += histogram.sums[j];
+        }
+        transparent += histogram.transparent;
+    }
+
+    /** Forget counted pixels, so the histogram can be reused for another frame. */
+    public void clear() {
+        Arrays.fill(counts, 0);
+        Arrays.fill(sums, 0);
+        transparent = 0;
+    }
+
+    /** @return number of transparent pixels counted */
+    public long transparent() {
+        return transparent;
+    }
+
+    /** @return number of bits per channel selecting a bin */
+    public int bits() {
+        return bits;
+    }
+
+    int bins() {
+        return counts.length;
+    }
+
+    long count(int bin) {
+        return counts[bin];
+    }
+
+    /** @return {@code 0xRRGGBB} mean color of pixels of the bin, which must not be empty */
+    int mean(int bin) {
+        return Quantization.mean(counts[bin], sums[3 * bin], sums[3 * bin + 1], sums[3 * bin + 2]);
+    }
+
+    /** @return sum of the channel of pixels of the bin, 0 is red, 1 is green and 2 is blue */
+    long sum(int bin, int channel) {
+        return sums[3 * bin + channel];
+    }
+}
@@ -1,10 +1,62 @@
 package su.dkzde.genki;
 
+import java.nio.ByteBuffer;
+
+/**
+ * Decoder of LZW-compressed image data. {@link #decode(byte[])} and {@link #decodeBytes(byte[])} fall back
+ * to each other, so implementations override at least one of them, preferably {@link #decodeBytes(byte[])}
+ * along with {@link #decode(byte[], byte[], int)} to avoid intermediate arrays.
+ */
 public interface DataDecoder {
 
     void initialize(int mcs);
 
-    int[] decode(byte[] block);
+    default int[] decode(byte[] block) {
+        return Indices.widen(decodeBytes(block));
+    }
+
+    /** @return indices decoded from the data sub-block, one unsigned byte per index */
+    default byte[] decodeBytes(byte[] block) {
+        return Indices.narrow(decode(block));
+    }
+
+    /**
+     * Decode the data sub-block straight into {@code out} starting at {@code offset}.
+     * @return the number of indices written
+     * @throws DataChannelException if the indices do not fit into the array
+     */
+    default int decode(byte[] block, byte[] out, int offset) {
+        return decode(block, out, offset, out.length);
+    }
+
+    /**
+     * Variant of {@link #decode(byte[], byte[], int)} writing no further than {@code limit},
+     * so that buffers shared between images of different sizes are bounded by the current one.
+     * @throws DataChannelException if the indices do not fit before the limit
+     */
+    default int decode(byte[] block, byte[] out, int offset, int limit) {
+        byte[] indices = decodeBytes(block);
+        if (indices.length > limit - offset) {
+            throw new DataChannelException();
+        }
+        System.arraycopy(indices, 0, out, offset, indices.length);
+        return indices.length;
+    }
+
+    /** Variant of {@link #decodeBytes(byte[])} reading remaining bytes of the buffer without changing its position. */
+    default byte[] decodeBytes(ByteBuffer block) {
+        return decodeBytes(Blocks.copy(block));
+    }
+
+    /** Variant of {@link #decode(byte[], byte[], int)} reading remaining bytes of the buffer without changing its position. */
+    default int decode(ByteBuffer block, byte[] out, int offset) {
+        return decode(block, out, offset, out.length);
+    }
+
+    /** Variant of {@link #decode(byte[], byte[], int, int)} reading remaining bytes of the buffer without changing its position. */
+    default int decode(ByteBuffer block, byte[] out, int offset, int limit) {
+        return decode(Blocks.copy(block), out, offset, limit);
+    }
 
     void dispose();
 
@@ -16,4 +68,12 @@ public interface DataDecoder {
         return LZW.makeDecoder(bufferCap, stackCap);
     }
 
+    static DataDecoder makeDirectDecoder() {
+        return LZW.makeDirectDecoder();
+    }
+
+    static DataDecoder makeDirectDecoder(int bufferCap) {
+        return LZW.makeDirectDecoder(bufferCap);
+    }
+
 }
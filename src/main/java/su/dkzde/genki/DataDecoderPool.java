@@ -0,0 +1,95 @@
+package su.dkzde.genki;
+
+import java.nio.ByteBuffer;
+import java.util.function.Supplier;
+
+/**
+ * Thread-safe pool of decoders, a drop-in replacement of a decoder supplier: decoders it supplies return
+ * to the pool on {@link DataDecoder#dispose()}, so once the pool is warmed up, decoding a frame allocates nothing
+ * on the LZW path. A disposed decoder must not be used anymore. Usage:
+ * <pre>
+ *     DataDecoderPool pool = new DataDecoderPool(DataDecoder::makeDecoder, 64);
+ *     ...
+ *     new FrameDecoder(pool, visitor);
+ * </pre>
+ */
+public final class DataDecoderPool implements Supplier<DataDecoder> {
+
+    private final Supplier<DataDecoder> supplier;
+    private final Pool<Pooled> idle;
+
+    /** @param capacity maximum number of idle decoders retained by the pool */
+    public DataDecoderPool(Supplier<DataDecoder> supplier, int capacity) {
+        this.supplier = supplier;
+        this.idle = new Pool<>(capacity);
+    }
+
+    @Override
+    public DataDecoder get() {
+        Pooled decoder = idle.poll();
+        if (decoder == null) {
+            decoder = new Pooled(supplier.get());
+        }
+        decoder.leased = true;
+        return decoder;
+    }
+
+    private final class Pooled implements DataDecoder {
+
+        private final DataDecoder backend;
+        private boolean leased;
+
+        private Pooled(DataDecoder backend) {
+            this.backend = backend;
+        }
+
+        @Override
+        public void initialize(int mcs) {
+            backend.initialize(mcs);
+        }
+
+        @Override
+        public byte[] decodeBytes(byte[] block) {
+            return backend.decodeBytes(block);
+        }
+
+        @Override
+        public int[] decode(byte[] block) {
+            return backend.decode(block);
+        }
+
+        @Override
+        public int decode(byte[] block, byte[] out, int offset) {
+            return backend.decode(block, out, offset);
+        }
+
+        @Override
+        public byte[] decodeBytes(ByteBuffer block) {
+            return backend.decodeBytes(block);
+        }
+
+        @Override
+        public int decode(ByteBuffer block, byte[] out, int offset) {
+            return backend.decode(block, out, offset);
+        }
+
+        @Override
+        public int decode(byte[] block, byte[] out, int offset, int limit) {
+            return backend.decode(block, out, offset, limit);
+        }
+
+        @Override
+        public int decode(ByteBuffer block, byte[] out, int offset, int limit) {
+            return backend.decode(block, out, offset, limit);
+        }
+
+        @Override
+        public void dispose() {
+            if (leased) {
+                leased = false;
+                backend.dispose();
+                idle.offer(this);
+            }
+        }
+    }
+}
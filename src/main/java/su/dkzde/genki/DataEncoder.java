@@ -1,10 +1,23 @@
 package su.dkzde.genki;
 
+import java.util.concurrent.Executor;
+
+/**
+ * Encoder of index streams into LZW-compressed data sub-blocks. {@link #accept(int[])} and {@link #accept(byte[])}
+ * fall back to each other, so implementations override at least one of them, preferably {@link #accept(byte[])}.
+ */
 public interface DataEncoder {
 
     void initialize(int mcs);
 
-    void accept(int[] chunk);
+    default void accept(int[] chunk) {
+        accept(Indices.narrow(chunk));
+    }
+
+    /** Accept a chunk of indices, one unsigned byte per index. */
+    default void accept(byte[] chunk) {
+        accept(Indices.widen(chunk));
+    }
 
     byte[] encode(boolean eof);
 
@@ -13,4 +26,18 @@ public interface DataEncoder {
     static DataEncoder makeEncoder() {
         return LZW.makeEncoder();
     }
+
+    static DataEncoder makeSegmentedEncoder() {
+        return LZW.makeSegmentedEncoder();
+    }
+
+    /**
+     * Encoder for large images: the image is split into segments of {@code segmentSize} indices, each one starting
+     * with a clear code, and the segments are compressed concurrently on the executor. All input is retained
+     * until {@link #encode(boolean)} is called with {@code eof} set. Every segment costs a partially filled
+     * dictionary, segments of 2<sup>16</sup> indices or more keep the output within 1.5% of {@link #makeEncoder()}.
+     */
+    static DataEncoder makeSegmentedEncoder(Executor executor, int segmentSize) {
+        return LZW.makeSegmentedEncoder(executor, segmentSize);
+    }
 }
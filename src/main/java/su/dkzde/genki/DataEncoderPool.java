@@ -0,0 +1,68 @@
+package su.dkzde.genki;
+
+import java.util.function.Supplier;
+
+/**
+ * Thread-safe pool of encoders, the counterpart of {@link DataDecoderPool}: encoders it supplies return
+ * to the pool on {@link DataEncoder#dispose()}. A disposed encoder must not be used anymore.
+ */
+public final class DataEncoderPool implements Supplier<DataEncoder> {
+
+    private final Supplier<DataEncoder> supplier;
+    private final Pool<Pooled> idle;
+
+    /** @param capacity maximum number of idle encoders retained by the pool */
+    public DataEncoderPool(Supplier<DataEncoder> supplier, int capacity) {
+        this.supplier = supplier;
+        this.idle = new Pool<>(capacity);
+    }
+
+    @Override
+    public DataEncoder get() {
+        Pooled encoder = idle.poll();
+        if (encoder == null) {
+            encoder = new Pooled(supplier.get());
+        }
+        encoder.leased = true;
+        return encoder;
+    }
+
+    private final class Pooled implements DataEncoder {
+
+        private final DataEncoder backend;
+        private boolean leased;
+
+        private Pooled(DataEncoder backend) {
+            this.backend = backend;
+        }
+
+        @Override
+        public void initialize(int mcs) {
+            backend.initialize(mcs);
+        }
+
+        @Override
+        public void accept(byte[] chunk) {
+            backend.accept(chunk);
+        }
+
+        @Override
+        public void accept(int[] chunk) {
+            backend.accept(chunk);
+        }
+
+        @Override
+        public byte[] encode(boolean eof) {
+            return backend.encode(eof);
+        }
+
+        @Override
+        public void dispose() {
+            if (leased) {
+                leased = false;
+                backend.dispose();
+                idle.offer(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package su.dkzde.genki;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/**
+ * Decodes image data of a whole frame into a canvas of {@code imageWidth * imageHeight} indices,
+ * rows of interlaced images are rearranged into display order. The canvas is shared between frames
+ * and grows only when a larger frame is decoded. Usage:
+ * <pre>
+ *     FrameDecoder frames = new FrameDecoder(DataDecoder::makeDecoder, visitor);
+ *     ...
+ *     public ProtoImageVisitor visitImage(ImageDescriptor descriptor) {
+ *         return frames.visitImage(descriptor);
+ *     }
+ * </pre>
+ */
+public final class FrameDecoder implements ProtoImageVisitor {
+
+    private final FrameVisitor backend;
+    private final Supplier<DataDecoder> supplier;
+    private DataDecoder decoder;
+    private ImageDescriptor descriptor;
+
+    /** Indices in display order, delivered to the visitor. */
+    private byte[] canvas = new byte[0];
+    /** Indices in interlaced order, used only for interlaced images. */
+    private byte[] scratch = new byte[0];
+    private byte[] target;
+    /** Number of indices of the current image, the decoder writes no further than that. */
+    private int size;
+    private int offset;
+
+    public FrameDecoder(Supplier<DataDecoder> supplier, FrameVisitor visitor) {
+        this.backend = visitor;
+        this.supplier = supplier;
+    }
+
+    /** Prepare the canvas for the image and return this decoder as the visitor for its data. */
+    public ProtoImageVisitor visitImage(ImageDescriptor descriptor) {
+        this.descriptor = descriptor;
+        size = descriptor.imageWidth() * descriptor.imageHeight();
+        if (canvas.length < size) {
+            canvas = new byte[size];
+        }
+        if (descriptor.interlacingUsed()) {
+            if (scratch.length < size) {
+                scratch = new byte[size];
+            }
+            target = scratch;
+        } else {
+            target = canvas;
+        }
+        return this;
+    }
+
+    @Override
+    public void visitColorTable(int index, byte r, byte g, byte b) {
+        backend.visitColorTable(index, r, g, b);
+    }
+
+    @Override
+    public void visitDataStart(int lzwCodeSize) {
+        decoder = supplier.get();
+        decoder.initialize(lzwCodeSize);
+        offset = 0;
+    }
+
+    @Override
+    public void visitDataBlock(byte[] block) {
+        offset += decoder.decode(block, target, offset, size);
+    }
+
+    @Override
+    public void visitDataBlock(ByteBuffer block) {
+        offset += decoder.decode(block, target, offset, size);
+    }
+
+    @Override
+    public void visitEnd() {
+        decoder.dispose();
+        int width = descriptor.imageWidth();
+        int height = descriptor.imageHeight();
+        if (offset < size) {
+            Arrays.fill(target, offset, size, (byte) 0);
+        }
+        if (descriptor.interlacingUsed()) {
+            Interlace.deinterlace(scratch, canvas, width, height);
+        }
+        backend.visitFrame(descriptor, canvas);
+    }
+}
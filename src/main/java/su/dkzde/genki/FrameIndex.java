@@ -0,0 +1,139 @@
+package su.dkzde.genki;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Byte offsets of the frames of a GIF stream, built with a single pass over the stream that skips image data.
+ * Use it with {@link ProtoDecoder#accept(FrameIndex, int, ProtoVisitor)} to visit a frame without reading
+ * the frames that precede it. The index can be saved to a sidecar file next to the image and loaded back.
+ */
+public final class FrameIndex {
+
+    /**
+     * @param descriptorOffset offset of the image separator byte that starts the image descriptor
+     * @param controlOffset offset of the graphics control extension that applies to the image, or -1 if there is none
+     * @param colorTableOffset offset of the active color table, local or global, or -1 if there is none
+     * @param colorTableSize number of entries in the active color table
+     */
+    public record Frame(
+            long descriptorOffset,
+            long controlOffset,
+            long colorTableOffset,
+            int colorTableSize) {}
+
+    private static final int MAGIC = 0x58444947; // "GIDX"
+    private static final int FRAME_BYTES = 3 * Long.BYTES + Short.BYTES;
+
+    /** Header, logical screen descriptor, image descriptor and graphics control extension sizes in bytes. */
+    private static final int HEADER_BYTES = 6 + 7;
+    private static final int DESCRIPTOR_BYTES = 10;
+    private static final int CONTROL_BYTES = 8;
+
+    private final List<Frame> frames;
+
+    private FrameIndex(List<Frame> frames) {
+        this.frames = frames;
+    }
+
+    public int size() {
+        return frames.size();
+    }
+
+    public Frame frame(int frame) {
+        return frames.get(frame);
+    }
+
+    /** Scan the whole stream of the decoder, image data and unknown extensions are skipped, not read. */
+    public static FrameIndex build(ProtoDecoder decoder) throws IOException {
+        Builder builder = new Builder(decoder);
+        decoder.accept(builder);
+        return new FrameIndex(List.copyOf(builder.frames));
+    }
+
+    public void save(Path path) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(2 * Integer.BYTES + frames.size() * FRAME_BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC);
+        buffer.putInt(frames.size());
+        for (Frame frame : frames) {
+            buffer.putLong(frame.descriptorOffset());
+            buffer.putLong(frame.controlOffset());
+            buffer.putLong(frame.colorTableOffset());
+            buffer.putShort((short) frame.colorTableSize());
+        }
+        Files.write(path, buffer.array());
+    }
+
+    public static FrameIndex load(Path path) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.remaining() < 2 * Integer.BYTES || buffer.getInt() != MAGIC) {
+            throw new DataChannelException();
+        }
+        int size = buffer.getInt();
+        if (size < 0 || buffer.remaining() != (long) size * FRAME_BYTES) {
+            throw new DataChannelException();
+        }
+        List<Frame> frames = new ArrayList<>(size);
+        for (int j = 0; j < size; j++) {
+            frames.add(new Frame(
+                    buffer.getLong(),
+                    buffer.getLong(),
+                    buffer.getLong(),
+                    Short.toUnsignedInt(buffer.getShort())));
+        }
+        return new FrameIndex(List.copyOf(frames));
+    }
+
+    private static final class Builder implements ProtoVisitor {
+
+        private final ProtoDecoder decoder;
+        private final List<Frame> frames = new ArrayList<>();
+        private @Nullable LogicalScreenDescriptor lsd;
+        private long controlOffset = -1;
+
+        private Builder(ProtoDecoder decoder) {
+            this.decoder = decoder;
+        }
+
+        @Override public void visitHeader(Version version) {}
+
+        @Override public @Nullable ProtoApplicationVisitor visitApplication(ApplicationDescriptor descriptor) {
+            return null;
+        }
+
+        @Override public void visitLogicalScreenDescriptor(LogicalScreenDescriptor descriptor) {
+            this.lsd = descriptor;
+        }
+
+        @Override public void visitGraphicsControlExtension(GraphicsControlExtension extension) {
+            controlOffset = decoder.position() - CONTROL_BYTES;
+        }
+
+        @Override public void visitGlobalColorTable(int index, byte r, byte g, byte b) {}
+
+        @Override public @Nullable ProtoImageVisitor visitImage(ImageDescriptor descriptor) {
+            long descriptorOffset = decoder.position() - DESCRIPTOR_BYTES;
+            long colorTableOffset = -1;
+            int colorTableSize = 0;
+            if (descriptor.localColorTableUsed()) {
+                colorTableOffset = descriptorOffset + DESCRIPTOR_BYTES;
+                colorTableSize = descriptor.colorTableSize();
+            } else if (lsd != null && lsd.globalColorTableUsed()) {
+                colorTableOffset = HEADER_BYTES;
+                colorTableSize = lsd.colorTableSize();
+            }
+            frames.add(new Frame(descriptorOffset, controlOffset, colorTableOffset, colorTableSize));
+            controlOffset = -1;
+            return null;
+        }
+
+        @Override public void visitEnd() {}
+    }
+}
@@ -0,0 +1,10 @@
+package su.dkzde.genki;
+
+public interface FrameVisitor {
+    void visitColorTable(int index, byte r, byte g, byte b);
+    /**
+     * @param indices first {@code imageWidth * imageHeight} entries are indices of the frame in display order,
+     *                row by row; the array is reused for subsequent frames and must not be retained
+     */
+    void visitFrame(ImageDescriptor descriptor, byte[] indices);
+}
@@ -1,5 +1,6 @@
 package su.dkzde.genki;
 
+import java.nio.ByteBuffer;
 import java.util.function.Supplier;
 
 public final class ImageDecoder implements ProtoImageVisitor {
@@ -27,7 +28,12 @@ public final class ImageDecoder implements ProtoImageVisitor {
 
     @Override
     public void visitDataBlock(byte[] block) {
-        backend.visitData(decoder.decode(block));
+        backend.visitData(decoder.decodeBytes(block));
+    }
+
+    @Override
+    public void visitDataBlock(ByteBuffer block) {
+        backend.visitData(decoder.decodeBytes(block));
     }
 
     @Override
@@ -29,12 +29,7 @@ public final class ImageEncoder implements ImageVisitor {
 
     @Override
     public void visitDataStart() {
-        final int mcs;
-        if (id.localColorTableUsed()) {
-            mcs = Math.max(2, 1 + id.colorTableSizeBits());
-        } else {
-            mcs = Math.max(2, 1 + lsd.colorTableSizeBits());
-        }
+        int mcs = minimumCodeSize(lsd, id);
         encoder = supplier.get();
         encoder.initialize(mcs);
         backend.visitDataStart(mcs);
@@ -43,6 +38,16 @@ public final class ImageEncoder implements ImageVisitor {
     @Override
     public void visitData(int[] block) {
         encoder.accept(block);
+        encodeAvailable();
+    }
+
+    @Override
+    public void visitData(byte[] block) {
+        encoder.accept(block);
+        encodeAvailable();
+    }
+
+    private void encodeAvailable() {
         for (byte[] db = encoder.encode(false); db != null; db = encoder.encode(false)) {
             backend.visitDataBlock(db);
         }
@@ -56,4 +61,13 @@ public final class ImageEncoder implements ImageVisitor {
         encoder.dispose();
         backend.visitEnd();
     }
+
+    /** LZW minimum code size for the active color table of the image. */
+    static int minimumCodeSize(LogicalScreenDescriptor lsd, ImageDescriptor id) {
+        if (id.localColorTableUsed()) {
+            return Math.max(2, 1 + id.colorTableSizeBits());
+        } else {
+            return Math.max(2, 1 + lsd.colorTableSizeBits());
+        }
+    }
 }
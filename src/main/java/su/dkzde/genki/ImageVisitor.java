@@ -4,5 +4,9 @@ public interface ImageVisitor {
     void visitColorTable(int index, byte r, byte g, byte b);
     void visitDataStart();
     void visitData(int[] block);
+    /** Byte-oriented variant of {@link #visitData(int[])}, one unsigned byte per index. */
+    default void visitData(byte[] block) {
+        visitData(Indices.widen(block));
+    }
     void visitDataEnd();
 }
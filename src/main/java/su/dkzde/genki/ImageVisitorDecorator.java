@@ -1,11 +1,23 @@
 package su.dkzde.genki;
 
+/**
+ * Forwards every call to the downstream visitor. Byte indices are widened and passed to {@link #visitData(int[])},
+ * so subclasses overriding it see every chunk; subclasses that do not inspect indices opt in to passing
+ * byte indices downstream as they are.
+ */
 public abstract class ImageVisitorDecorator implements ImageVisitor {
 
     private final ImageVisitor downstream;
+    private final boolean passThrough;
 
     public ImageVisitorDecorator(ImageVisitor downstream) {
+        this(downstream, false);
+    }
+
+    /** @param passThrough whether byte indices are passed downstream without going through {@link #visitData(int[])} */
+    public ImageVisitorDecorator(ImageVisitor downstream, boolean passThrough) {
         this.downstream = downstream;
+        this.passThrough = passThrough;
     }
 
     @Override
@@ -23,6 +35,15 @@ public abstract class ImageVisitorDecorator implements ImageVisitor {
         downstream.visitData(block);
     }
 
+    @Override
+    public void visitData(byte[] block) {
+        if (passThrough) {
+            downstream.visitData(block);
+        } else {
+            visitData(Indices.widen(block));
+        }
+    }
+
     @Override
     public void visitDataEnd() {
         downstream.visitDataEnd();
@@ -0,0 +1,25 @@
+package su.dkzde.genki;
+
+/**
+ * Conversions between byte-oriented index arrays used by the decoding and encoding pipeline and their
+ * {@code int[]} counterparts; indices never exceed 255, so bytes are treated as unsigned.
+ */
+final class Indices {
+    private Indices() {}
+
+    static int[] widen(byte[] indices) {
+        int[] out = new int[indices.length];
+        for (int j = 0; j < indices.length; j++) {
+            out[j] = Byte.toUnsignedInt(indices[j]);
+        }
+        return out;
+    }
+
+    static byte[] narrow(int[] indices) {
+        byte[] out = new byte[indices.length];
+        for (int j = 0; j < indices.length; j++) {
+            out[j] = (byte) indices[j];
+        }
+        return out;
+    }
+}
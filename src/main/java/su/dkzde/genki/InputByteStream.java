@@ -1,12 +1,18 @@
 package su.dkzde.genki;
 
 import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 public class InputByteStream implements ByteStream {
 
     private final DataInputStream backend;
+    /** Scratch array behind slices, grows to the longest slice requested. */
+    private byte[] scratch = new byte[0];
+    private ByteBuffer view = ByteBuffer.wrap(scratch);
+    private long position = 0;
 
     public InputByteStream(InputStream backend) {
         this.backend = new DataInputStream(backend);
@@ -21,7 +27,9 @@ public class InputByteStream implements ByteStream {
 
     @Override
     public byte nextByte() throws IOException {
-        return backend.readByte();
+        byte b = backend.readByte();
+        position++;
+        return b;
     }
 
     @Override
@@ -30,13 +38,47 @@ public class InputByteStream implements ByteStream {
         if (consumed < sequence.length) {
             throw new DataChannelException();
         } else {
+            position += consumed;
             return sequence;
         }
     }
 
+    @Override
+    public ByteBuffer nextByteSlice(int length) throws IOException, DataChannelException {
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, 255)];
+            view = ByteBuffer.wrap(scratch).asReadOnlyBuffer();
+        }
+        try {
+            backend.readFully(scratch, 0, length);
+        } catch (EOFException exception) {
+            throw new DataChannelException();
+        }
+        position += length;
+        view.limit(length).position(0);
+        return view;
+    }
+
+    @Override
+    public void skip(int length) throws IOException, DataChannelException {
+        try {
+            backend.skipNBytes(length);
+            position += length;
+        } catch (EOFException exception) {
+            throw new DataChannelException();
+        }
+    }
+
+    @Override
+    public long position() {
+        return position;
+    }
+
     @Override
     public int nextUnsignedByte() throws IOException, DataChannelException {
-        return backend.readUnsignedByte();
+        int b = backend.readUnsignedByte();
+        position++;
+        return b;
     }
 
     @Override
@@ -0,0 +1,53 @@
+package su.dkzde.genki;
+
+/**
+ * Row order of interlaced images: rows are stored in four passes, every 8th row starting with row 0,
+ * every 8th row starting with row 4, every 4th row starting with row 2 and every 2nd row starting with row 1.
+ */
+final class Interlace {
+    private Interlace() {}
+
+    /** @return display row of the {@code j}-th row stored in an interlaced image of specified height */
+    static int row(int j, int height) {
+        int n = (height + 7) / 8;
+        if (j < n) {
+            return 8 * j;
+        }
+        j -= n;
+        n = (height + 3) / 8;
+        if (j < n) {
+            return 8 * j + 4;
+        }
+        j -= n;
+        n = (height + 1) / 4;
+        if (j < n) {
+            return 4 * j + 2;
+        }
+        j -= n;
+        return 2 * j + 1;
+    }
+
+    /** @return position among stored rows of the display row {@code y} in an interlaced image of specified height */
+    static int index(int y, int height) {
+        if (y % 8 == 0) {
+            return y / 8;
+        }
+        int n = (height + 7) / 8;
+        if (y % 8 == 4) {
+            return n + y / 8;
+        }
+        n += (height + 3) / 8;
+        if (y % 4 == 2) {
+            return n + y / 4;
+        }
+        n += (height + 1) / 4;
+        return n + y / 2;
+    }
+
+    /** Copy rows of {@code source} stored in interlaced order to {@code target} in display order. */
+    static void deinterlace(byte[] source, byte[] target, int width, int height) {
+        for (int j = 0; j < height; j++) {
+            System.arraycopy(source, j * width, target, row(j, height) * width, width);
+        }
+    }
+}
@@ -1,7 +1,13 @@
 package su.dkzde.genki;
 
 import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * LZW encoder and decoder implementations.
@@ -21,103 +27,165 @@ class LZW {
         return new Decoder(bufferCap, stackCap);
     }
 
+    public static DataDecoder makeDirectDecoder() {
+        return makeDirectDecoder(1 << 18);
+    }
+
+    public static DataDecoder makeDirectDecoder(int bufferCap) {
+        return new DirectDecoder(bufferCap);
+    }
+
     public static DataEncoder makeEncoder() {
         return new Encoder();
     }
 
+    public static DataEncoder makeSegmentedEncoder() {
+        return makeSegmentedEncoder(ForkJoinPool.commonPool(), 1 << 18);
+    }
+
+    public static DataEncoder makeSegmentedEncoder(Executor executor, int segmentSize) {
+        return new SegmentedEncoder(executor, segmentSize);
+    }
+
+    /**
+     * Reads variable-size codes from a sequence of data sub-blocks, shared by decoder implementations.
+     * Subclasses maintain the current code size {@code ccs} according to the state of their dictionaries.
+     */
+    private static abstract class CodeReader {
+
+        /** Current code size. */
+        int ccs;
+
+        void resetReader() {
+            i_buffer = null;
+            i_view = null;
+            i_ptr = 0;
+            i_end = 0;
+            acc = 0;
+            acc_bits = 0;
+        }
+
+        /**
+         * {@code i_buffer} or {@code i_view} stores the reference to current input sub-block,
+         * {@link #set(byte[])} and {@link #set(ByteBuffer)} set {@code i_ptr} back to the beginning of the block
+         * so that decoder can be shared instead of being re-allocated in memory.
+         * Buffer views are read by absolute positions, so their position is never changed.
+         */
+        private byte[] i_buffer;
+        private ByteBuffer i_view;
+        private int i_ptr = 0;
+        private int i_end = 0;
+        /**
+         * {@code acc} is a bit accumulator filled with whole input bytes, least significant bit first,
+         * {@code acc_bits} is the number of valid bits in it. Bits that are left in the accumulator
+         * after a sub-block is exhausted are carried over to the next one, so that codes split by
+         * sub-block boundaries are joined without any special handling.
+         */
+        private long acc;
+        private int acc_bits;
+        void set(byte[] block) {
+            i_buffer = block;
+            i_view = null;
+            i_ptr = 0;
+            i_end = block.length;
+        }
+        void set(ByteBuffer block) {
+            i_buffer = null;
+            i_view = block;
+            i_ptr = block.position();
+            i_end = block.limit();
+        }
+        /** Load as many whole bytes of the current sub-block into the accumulator as it can hold. */
+        private void fill() {
+            int ptr = i_ptr;
+            int end = Math.min(i_end, ptr + ((63 - acc_bits) >> 3));
+            long a = acc;
+            int n = acc_bits;
+            if (i_view == null) {
+                byte[] block = i_buffer;
+                while (ptr < end) {
+                    a |= (block[ptr++] & 0xffL) << n;
+                    n += 8;
+                }
+            } else {
+                ByteBuffer block = i_view;
+                while (ptr < end) {
+                    a |= (block.get(ptr++) & 0xffL) << n;
+                    n += 8;
+                }
+            }
+            acc = a;
+            acc_bits = n;
+            i_ptr = ptr;
+        }
+        /** @return next code of size {@code ccs} or {@code -1} if current sub-block is exhausted */
+        int read() {
+            if (acc_bits < ccs) {
+                fill();
+                if (acc_bits < ccs) {
+                    return -1;
+                }
+            }
+            int code = (int) acc & ((1 << ccs) - 1);
+            acc >>>= ccs;
+            acc_bits -= ccs;
+            return code;
+        }
+    }
+
     /**
      * Decodes a data block into an array of indices. Usage:
      * <pre>
      *     LZW.Decoder decoder = LZW.getDecoder();
      *     decoder.initialize(lzwMinimalCodeSize);
      *     while (moreInput) {
-     *         int[] chunk = decoder.decode(block);
+     *         byte[] chunk = decoder.decodeBytes(block);
      *         process(chunk);
      *     }
      *     decoder.close();
      * </pre>
+     * Alternatively, indices can be decoded straight into a caller-supplied array:
+     * <pre>
+     *     int offset = 0;
+     *     while (moreInput) {
+     *         offset += decoder.decode(block, canvas, offset);
+     *     }
+     * </pre>
      */
-    private static final class Decoder implements DataDecoder {
+    private static final class Decoder extends CodeReader implements DataDecoder {
 
         private Decoder(int bufferCap, int stackCap) {
-            o_buffer = new int[bufferCap];
+            o_buffer = new byte[bufferCap];
             backrefStack = new int[stackCap];
         }
 
         @Override
         public void initialize(int mcs) {
             p = c_null;
-            o_ptr = 0;
-            i1_buffer = null;
-            i1_ptr = 0;
-            i_buffer = null;
-            i_ptr = 0;
+            resetReader();
             initDictionary(mcs);
         }
 
         @Override
         public void dispose() {}
 
-        /**
-         * {@code i_buffer} stores the reference to current input sub-block,
-         * {@link #set(byte[])} sets {@code i_ptr} back to zero
-         * so that decoder can be shared instead of being re-allocated in memory.
-         */
-        private byte[] i_buffer;
-        private int i_ptr = 0;
-        /**
-         * {@code i1_buffer} stores the previous block or data so decoder can join
-         * codes that are being split by sub-block boundaries
-         */
-        private byte[] i1_buffer;
-        private int i1_ptr;
-        private void set(byte[] block) {
-            i1_buffer = i_buffer;
-            i1_ptr = i_ptr;
-            i_buffer = block;
-            i_ptr = 0;
-        }
-        private int read() {
-            if (i1_buffer == null) {
-                if (8 * i_buffer.length >= i_ptr + ccs) {
-                    int code = LZW.nextCode(ccs, i_ptr, i_buffer);
-                    i_ptr += ccs;
-                    return code;
-                } else {
-                    return -1;
-                }
-            } else {
-                int remain = 8 * i1_buffer.length - i1_ptr;
-                if (remain > 0) {
-                    int c1 = LZW.nextCode(remain, i1_ptr, i1_buffer);
-                    int c2 = LZW.nextCode(ccs - remain, i_ptr, i_buffer);
-                    i_ptr += ccs - remain;
-                    i1_buffer = null;
-                    i1_ptr = 0;
-                    return c1 | (c2 << remain);
-                } else {
-                    i1_buffer = null;
-                    i1_ptr = 0;
-                    int code = LZW.nextCode(ccs, i_ptr, i_buffer);
-                    i_ptr += ccs;
-                    return code;
-                }
-            }
-        }
-
         /**
          * {@code o_buffer} is preemptively allocated array used to record output stream,
          * so that each decode call produces max one allocation caused by copying {@code o_buffer}.
          */
-        private final int[] o_buffer;
+        private final byte[] o_buffer;
+        /**
+         * {@code o_target} is the array indices are written to: either {@code o_buffer} or caller-supplied array,
+         * data producing indices past {@code o_limit} is rejected.
+         */
+        private byte[] o_target;
         private int o_ptr = 0;
+        private int o_limit;
         private void write(int index) {
-            o_buffer[o_ptr++] = index;
-        }
-        private int[] output() {
-            int[] out = Arrays.copyOfRange(o_buffer, 0, o_ptr);
-            o_ptr = 0;
-            return out;
+            if (o_ptr >= o_limit) {
+                throw new DataChannelException();
+            }
+            o_target[o_ptr++] = (byte) index;
         }
 
         /**
@@ -143,8 +211,6 @@ class LZW {
         private int t_ptr;
         /** Minimal code size. */
         private int mcs;
-        /** Current code size. */
-        private int ccs;
         /** Initial table size. */
         private int its;
         private void initDictionary(int mcs) {
@@ -217,24 +283,69 @@ class LZW {
 
         /** Copy backref stack to output buffer given the stack depth {@code d} */
         private void writeBackrefStack(int d) {
+            byte[] target = o_target;
+            int ptr = o_ptr;
+            if (d > o_limit - ptr) {
+                throw new DataChannelException();
+            }
             for (int j = d; j > 0; j--) {
-                write(stackValue(j));
+                target[ptr++] = (byte) stackValue(j);
             }
+            o_ptr = ptr;
+        }
+
+        @Override
+        public byte[] decodeBytes(byte[] block) {
+            set(block);
+            return decodeBytes();
+        }
+
+        @Override
+        public byte[] decodeBytes(ByteBuffer block) {
+            set(block);
+            return decodeBytes();
         }
 
-        private int p = c_null;
         @Override
-        public int[] decode(byte[] block) {
+        public int decode(byte[] block, byte[] out, int offset, int limit) {
             set(block);
+            return decode(out, offset, limit);
+        }
+
+        @Override
+        public int decode(ByteBuffer block, byte[] out, int offset, int limit) {
+            set(block);
+            return decode(out, offset, limit);
+        }
+
+        private byte[] decodeBytes() {
+            o_target = o_buffer;
+            o_ptr = 0;
+            o_limit = o_buffer.length;
+            decodeBlock();
+            return Arrays.copyOfRange(o_buffer, 0, o_ptr);
+        }
+
+        private int decode(byte[] out, int offset, int limit) {
+            o_target = out;
+            o_ptr = offset;
+            o_limit = limit;
+            decodeBlock();
+            return o_ptr - offset;
+        }
+
+        private int p = c_null;
+        /** Decode the sub-block that was {@link #set(byte[])} to the reader. */
+        private void decodeBlock() {
             while (true) {
                 int c = read();
                 if (c < 0) {
-                    return output();
+                    return;
                 }
                 int i = lookupEntry(c);
                 switch (i) {
                     case c_end -> {
-                        return output();
+                        return;
                     }
                     case c_clear -> {
                         p = c_null;
@@ -269,22 +380,185 @@ class LZW {
         }
     }
 
-    /** @return the code of size {@code ccs} at {@code ptr} in specified byte block */
-    private static int nextCode(int ccs, int ptr, byte[] block) {
-        int c = 0;
-        int clb = 0;
-        int rcb = ccs;
-        while (rcb > 0) {
-            int cb = Byte.toUnsignedInt(block[ptr/8]);
-            int cbp = ptr%8;
-            int bs = Math.min(8 - cbp, rcb);
-            int mask = ((1 << bs) - 1) << cbp;
-            c |= ((cb & mask) >> cbp) << clb;
-            clb += bs;
-            ptr += bs;
-            rcb -= bs;
-        }
-        return c;
+    /**
+     * Decodes a data block into an array of indices, same as {@link Decoder}, but instead of rebuilding
+     * code sequences from back-references, every dictionary entry records the offset and the length
+     * of its first occurrence in the output, so each code is expanded by a single copy of prior output.
+     *
+     * Output is retained since the last clear code, as entries may refer to any part of it, the buffer
+     * grows on demand and is rebased whenever a clear code invalidates the dictionary.
+     */
+    private static final class DirectDecoder extends CodeReader implements DataDecoder {
+
+        private DirectDecoder(int bufferCap) {
+            o_buffer = new byte[bufferCap];
+        }
+
+        @Override
+        public void initialize(int mcs) {
+            this.mcs = mcs;
+            this.its = 1 << mcs;
+            c_clear = its;
+            c_end = 1 + its;
+            p = c_null;
+            o_ptr = 0;
+            o_start = 0;
+            resetReader();
+            clearDictionary();
+        }
+
+        @Override
+        public void dispose() {}
+
+        /**
+         * {@code o_buffer} stores output since the last clear code, {@code o_start} marks the beginning
+         * of the output produced by the current call to {@link #decodeBlock()}.
+         */
+        private byte[] o_buffer;
+        private int o_ptr;
+        private int o_start;
+        /** Ensure there is a room for {@code n} more indices in the output buffer. */
+        private void reserve(int n) {
+            if (o_ptr + n > o_buffer.length) {
+                o_buffer = Arrays.copyOf(o_buffer, Math.max(2 * o_buffer.length, o_ptr + n));
+            }
+        }
+        /** Drop the output preceding the current call, since no dictionary entry refers to it anymore. */
+        private void rebase() {
+            int n = o_ptr - o_start;
+            System.arraycopy(o_buffer, o_start, o_buffer, 0, n);
+            o_start = 0;
+            o_ptr = n;
+        }
+
+        /**
+         * {@code t_offset[c]} and {@code t_length[c]} locate the sequence of code {@code c} in the output buffer;
+         * codes of the initial table are not stored, since they are sequences of a single index equal to the code.
+         */
+        private final int[] t_offset = new int[4096];
+        private final int[] t_length = new int[4096];
+        /** Table pointer: points to an entry that is not yet occupied, hard capped at 4096. */
+        private int t_ptr;
+        /** Minimal code size. */
+        private int mcs;
+        /** Initial table size. */
+        private int its;
+        private int c_clear;
+        private int c_end;
+        private static final int c_null = -1;
+        private void clearDictionary() {
+            ccs = 1 + mcs;
+            t_ptr = 2 + its;
+        }
+        private void append(int offset, int length) {
+            if (t_ptr < 4096) {
+                t_offset[t_ptr] = offset;
+                t_length[t_ptr] = length;
+                if (++t_ptr >= (1 << ccs)) {
+                    if (ccs < 12) ccs++;
+                }
+            }
+        }
+
+        /** Previous code, along with the offset and the length of its sequence in the output buffer. */
+        private int p = c_null;
+        private int p_offset;
+        private int p_length;
+        @Override
+        public byte[] decodeBytes(byte[] block) {
+            set(block);
+            return decodeBytes();
+        }
+
+        @Override
+        public byte[] decodeBytes(ByteBuffer block) {
+            set(block);
+            return decodeBytes();
+        }
+
+        @Override
+        public int decode(byte[] block, byte[] out, int offset, int limit) {
+            set(block);
+            return decode(out, offset, limit);
+        }
+
+        @Override
+        public int decode(ByteBuffer block, byte[] out, int offset, int limit) {
+            set(block);
+            return decode(out, offset, limit);
+        }
+
+        private byte[] decodeBytes() {
+            decodeBlock();
+            byte[] out = Arrays.copyOfRange(o_buffer, o_start, o_ptr);
+            o_start = o_ptr;
+            return out;
+        }
+
+        private int decode(byte[] out, int offset, int limit) {
+            decodeBlock();
+            int n = o_ptr - o_start;
+            if (n > limit - offset) {
+                throw new DataChannelException();
+            }
+            System.arraycopy(o_buffer, o_start, out, offset, n);
+            o_start = o_ptr;
+            return n;
+        }
+
+        /** Decode the sub-block that was {@link #set(byte[])} to the reader. */
+        private void decodeBlock() {
+            while (true) {
+                int c = read();
+                if (c < 0) {
+                    return;
+                }
+                if (c < its) {
+                    reserve(1);
+                    int offset = o_ptr;
+                    o_buffer[o_ptr++] = (byte) c;
+                    if (p != c_null) {
+                        append(p_offset, 1 + p_length);
+                    }
+                    p = c;
+                    p_offset = offset;
+                    p_length = 1;
+                } else if (c == c_clear) {
+                    p = c_null;
+                    clearDictionary();
+                    rebase();
+                } else if (c == c_end) {
+                    return;
+                } else if (c < t_ptr) {
+                    int length = t_length[c];
+                    reserve(length);
+                    int offset = o_ptr;
+                    System.arraycopy(o_buffer, t_offset[c], o_buffer, offset, length);
+                    o_ptr += length;
+                    if (p != c_null) {
+                        append(p_offset, 1 + p_length);
+                    }
+                    p = c;
+                    p_offset = offset;
+                    p_length = length;
+                } else {
+                    // Code is not in the dictionary yet, the sequence is previous one followed by its first index:
+                    if (p == c_null) {
+                        throw new DataChannelException();
+                    }
+                    int length = 1 + p_length;
+                    reserve(length);
+                    int offset = o_ptr;
+                    System.arraycopy(o_buffer, p_offset, o_buffer, offset, p_length);
+                    o_buffer[offset + p_length] = o_buffer[p_offset];
+                    o_ptr += length;
+                    append(p_offset, length);
+                    p = c;
+                    p_offset = offset;
+                    p_length = length;
+                }
+            }
+        }
     }
 
     /**
@@ -296,7 +570,7 @@ class LZW {
      *
      *     // While input is still available feed to encoder and call .encode until it eventually asks for more input
      *     // by returning a null:
-     *     for (int[] block : blocks) {
+     *     for (byte[] block : blocks) {
      *         encoder.accept(block);
      *         for (byte[] db = encoder.encode(false); db != null; db = encoder.encode(false)) {
      *             processDataBlock(db);
@@ -318,7 +592,9 @@ class LZW {
         public void initialize(int mcs) {
             eof_emitted = false;
             o_ptr = 0;
-            ov_ptr = 0;
+            o_bits = 0;
+            acc = 0;
+            acc_bits = 0;
             i0_buffer = null;
             i0_ptr = 0;
             i_buffer = null;
@@ -329,108 +605,68 @@ class LZW {
         @Override
         public void dispose() {}
 
+        /** {@code o_buffer} is the data sub-block being filled, {@code o_ptr} is the number of bytes written to it. */
         private int o_ptr;
         private final byte[] o_buffer = new byte[255];
-        private int ov_ptr = 0;
-        private final byte[] ov_buffer = new byte[16];
-        private boolean eof_emitted;
         /**
-         * @return whether block is completed and should be emitted by a call to the encoder,
-         * in case codes cannot be written to the output buffer, write them to the overflow
-         * buffer to copy it back later.
+         * {@code acc} is a bit accumulator storing written codes, least significant bit first,
+         * {@code acc_bits} is the number of pending bits in it. Whole bytes are moved to the output sub-block
+         * as soon as there is room for them; once the sub-block is full the remaining bits stay in the accumulator
+         * until the block is emitted, at most a few codes are written in between, so the accumulator never overflows.
          */
+        private long acc;
+        private int acc_bits;
+        private boolean eof_emitted;
+        /** Total number of code bits written, padding excluded. */
+        private long o_bits;
+        /** @return whether block is completed and should be emitted by a call to the encoder. */
         private boolean write(int c) {
-
-            int remain = 8 * o_buffer.length - o_ptr;
-            if (remain <= 0) {
-                insertCode(c, ccs, ov_ptr, ov_buffer);
-                ov_ptr += ccs;
-                return true;
-            } else if (ov_ptr > 0) {
-                System.arraycopy(ov_buffer, 0, o_buffer, 0, ov_buffer.length);
-                insertCode(c, ccs, ov_ptr, o_buffer);
-                o_ptr = ov_ptr + ccs;
-                ov_ptr = 0;
-                return false;
-            }
-
-            if (remain > ccs) {
-                insertCode(c, ccs, o_ptr, o_buffer);
-                o_ptr += ccs;
-                return false;
-            } else if (remain < ccs) {
-                insertCode(c, remain, o_ptr, o_buffer);
-                int rc = c >> remain;
-                int rcs = ccs - remain;
-                insertCode(rc, rcs, ov_ptr, ov_buffer);
-                ov_ptr += rcs;
-                o_ptr += remain;
-                return true;
-            } else {
-                insertCode(c, ccs, o_ptr, o_buffer);
-                o_ptr += ccs;
-                return true;
+            acc |= (long) c << acc_bits;
+            acc_bits += ccs;
+            o_bits += ccs;
+            flush();
+            return o_ptr == o_buffer.length;
+        }
+        /** Move whole bytes from the accumulator to the output sub-block while it has room for them. */
+        private void flush() {
+            while (acc_bits >= 8 && o_ptr < o_buffer.length) {
+                o_buffer[o_ptr++] = (byte) acc;
+                acc >>>= 8;
+                acc_bits -= 8;
             }
         }
+        /**
+         * @return completed sub-block; after end of information code is emitted the trailing partial byte is padded
+         * with zeros and the last, possibly shorter, sub-block is returned, followed by {@code null}.
+         */
         private byte[] output() {
-            int cb = o_ptr/8;
-            int rb = o_ptr%8;
-            if (rb > 0) {
-                rb = 8 - rb;
-            }
             if (eof_emitted) {
-                if (o_ptr > 0) {
-                    if (cb < o_buffer.length) {
-                        if (rb > 0) {
-                            insertCode(0, rb, o_ptr, o_buffer);
-                            o_ptr = 0;
-                            return Arrays.copyOfRange(o_buffer, 0, 1 + cb);
-                        } else {
-                            o_ptr = 0;
-                            return Arrays.copyOfRange(o_buffer, 0, cb);
-                        }
-                    } else {
-                        o_ptr = 0;
-                        return o_buffer;
-                    }
-                } else if (ov_ptr > 0) {
-                    int ocb = ov_ptr/8;
-                    int orb = ov_ptr%8;
-                    if (orb > 0) {
-                        orb = 8 - orb;
-                    }
-                    if (orb > 0) {
-                        insertCode(0, ocb, ov_ptr, o_buffer);
-                    }
-                    ov_ptr = 0;
-                    return Arrays.copyOfRange(ov_buffer, 0, 1 + ocb);
-                } else {
-                    return null;
+                flush();
+                if (acc_bits > 0 && o_ptr < o_buffer.length) {
+                    o_buffer[o_ptr++] = (byte) acc;
+                    acc = 0;
+                    acc_bits = 0;
                 }
+            }
+            if (o_ptr == o_buffer.length) {
+                o_ptr = 0;
+                return o_buffer;
+            } else if (o_ptr > 0) {
+                byte[] out = Arrays.copyOf(o_buffer, o_ptr);
+                o_ptr = 0;
+                return out;
             } else {
-                if (cb < o_buffer.length) {
-                    if (rb > 0) {
-                        insertCode(0, rb, o_ptr, o_buffer);
-                        o_ptr = 0;
-                        return Arrays.copyOfRange(o_buffer, 0, 1 + cb);
-                    } else {
-                        o_ptr = 0;
-                        return Arrays.copyOfRange(o_buffer, 0, cb);
-                    }
-                } else {
-                    o_ptr = 0;
-                    return o_buffer;
-                }
+                return null;
             }
         }
 
-        private @Nullable int[] i0_buffer = null;
+        private @Nullable byte[] i0_buffer = null;
         private int i0_ptr;
-        private int[] i_buffer;
+        private byte[] i_buffer;
         private int i_ptr;
 
         @Override
-        public void accept(int[] chunk) {
+        public void accept(byte[] chunk) {
             i0_buffer = i_buffer;
             i0_ptr = i_ptr;
             i_buffer = chunk;
@@ -455,70 +691,85 @@ class LZW {
         private int lookup(int i) {
             if (i0_buffer != null) {
                 if (i0_ptr + i < i0_buffer.length) {
-                    return i0_buffer[i0_ptr + i];
+                    return Byte.toUnsignedInt(i0_buffer[i0_ptr + i]);
                 } else {
                     i -= i0_buffer.length - i0_ptr;
                 }
             }
             if (i_ptr + i < i_buffer.length) {
-                return i_buffer[i_ptr + i];
+                return Byte.toUnsignedInt(i_buffer[i_ptr + i]);
             } else {
                 return -1;
             }
         }
 
-        private static final int c_literal = -1;
-        private static final int c_null = -2;
+        private static final int c_null = -1;
 
         private int its;
         private int mcs;
         private int ccs;
-        private final int[] table = new int[3 * 4096];
         private int t_ptr = 0;
         private int c_clear;
         private int c_eof;
+
+        /**
+         * Dictionary is stored as an open-addressing hash table mapping a pair of (prefix code, next index)
+         * to the code of the sequence formed by appending the index to the prefix; every entry of the dictionary
+         * is an extension of another entry by a single index, so the longest prefix can be found by descending
+         * through the table one input index at a time.
+         * {@code h_keys[s]} is either {@code c_null} for an unoccupied slot or a key packed by {@link #key(int, int)},
+         * {@code h_codes[s]} is the code of the sequence stored in the slot.
+         * Table size is twice the maximal amount of codes, so the load factor never exceeds one half.
+         */
+        private static final int h_bits = 13;
+        private static final int h_size = 1 << h_bits;
+        private final int[] h_keys = new int[h_size];
+        private final int[] h_codes = new int[h_size];
+        private static int key(int c, int k) {
+            return (c << 8) | k;
+        }
+        private static int slot(int key) {
+            return (key * 0x9e3779b1) >>> (32 - h_bits);
+        }
+
         private void initDictionary(int mcs) {
             this.mcs = mcs;
             this.ccs = 1 + mcs;
             this.its = 1 << mcs;
-            for (int j = 0; j < its; j++) {
-                table[3 * j] = c_literal;
-                table[3 * j + 1] = j;
-                table[3 * j + 2] = 0;
-            }
             c_clear = its;
             c_eof = 1 + its;
             t_ptr = 2 + its;
-            Arrays.fill(table, 3 * (its + 2), table.length, c_null);
+            Arrays.fill(h_keys, c_null);
             write(c_clear);
         }
         private boolean clearDictionary() {
             boolean yield = write(c_clear);
             ccs = 1 + mcs;
             t_ptr = 2 + its;
-            Arrays.fill(table, 3 * (its + 2), table.length, c_null);
+            Arrays.fill(h_keys, c_null);
             return yield;
         }
-        /** @return either previous element of the sequence or {@code c_literal} if entry is a part of initial table */
-        private int lookupEntry(int e) {
-            return table[3 * e];
-        }
-        /** @return output code of current entry element */
-        private int lookupCode(int e) {
-            return table[3 * e + 1];
-        }
-        /** @return lookup length of the current entry element */
-        private int lookupLength(int e) {
-            return table[3 * e + 2];
-        }
-        private int lookupSequenceLength(int e) {
-            return 1 + table[3 * e + 2];
+        /** @return code of the sequence {@code c} followed by index {@code k} or {@code c_null} if there is no such entry */
+        private int lookupEntry(int c, int k) {
+            int key = key(c, k);
+            for (int s = slot(key); ; s = (s + 1) & (h_size - 1)) {
+                int h = h_keys[s];
+                if (h == key) {
+                    return h_codes[s];
+                } else if (h == c_null) {
+                    return c_null;
+                }
+            }
         }
         private boolean append(int c, int k) {
             if (t_ptr < 4096) {
-                table[3 * t_ptr] = c;
-                table[3 * t_ptr + 1] = k;
-                table[3 * t_ptr + 2] = 1 + table[3 * c + 2];
+                int key = key(c, k);
+                int s = slot(key);
+                while (h_keys[s] != c_null) {
+                    s = (s + 1) & (h_size - 1);
+                }
+                h_keys[s] = key;
+                h_codes[s] = t_ptr;
                 if (t_ptr++ >= (1 << ccs)) {
                     if (ccs < 12) ccs++;
                 }
@@ -549,47 +800,25 @@ class LZW {
                     }
                 }
 
-                // Lookup longest prefix:
-                int lp = c_null;
-                lookup:
-                for (int j = t_ptr - 1; j > c_eof; j--) {
-                    int e = j;
-                    while (true) {
-                        int el = lookupEntry(e);
-                        int ec = lookupCode(e);
-                        int en = lookupLength(e);
-                        int ci = lookup(en);
-                        if (ci < 0) {
-                            if (eof) {
-                                continue lookup;
-                            } else {
-                                return null;
-                            }
-                        }
-                        if (lookup(en) == ec) {
-                            if (el == c_literal) {
-                                lp = j;
-                                break lookup;
-                            } else {
-                                e = el;
-                            }
-                        } else {
-                            continue lookup;
-                        }
+                // Lookup longest prefix, extending the match by one index at a time:
+                int lp = lookup(0);
+                int ls = 1;
+                int k;
+                while ((k = lookup(ls)) >= 0) {
+                    int e = lookupEntry(lp, k);
+                    if (e == c_null) {
+                        break;
                     }
+                    lp = e;
+                    ls++;
                 }
 
-                if (lp == c_null) {
-                    lp = lookup(0);
-                }
-
-                int k = lookup(1 + lookupLength(lp));
                 if (k < 0) {
                     if (!eof) {
                         return null;
                     }
                 }
-                advance(lookupSequenceLength(lp));
+                advance(ls);
 
                 boolean yieldBlock = write(lp);
 
@@ -610,16 +839,197 @@ class LZW {
         }
     }
 
-    private static void insertCode(int c, int ccs, int ptr, byte[] block) {
-        while (ccs > 0) {
-            int bi = ptr/8;
-            int cbp = ptr%8;
-            int rb = Math.min(8 - cbp, ccs);
-            int bs = c & ((1 << rb) - 1);
-            block[bi] = (byte) ((block[bi] & ((1 << cbp) - 1)) | (bs << cbp));
-            c = c >> rb;
-            ccs -= rb;
-            ptr += rb;
+    /**
+     * Encodes a whole image by splitting its index stream into segments of {@code segmentSize} indices, each one
+     * is compressed by its own {@link Encoder} as a separate task on the executor. A segment begins with a clear code,
+     * so it does not depend on the dictionary of the previous one, and the output is a standard LZW stream
+     * readable by any decoder. Chunks are retained until {@link #encode(boolean)} is called with {@code eof} set,
+     * only then segments are compressed, concatenated at bit granularity and returned as data sub-blocks.
+     */
+    private static final class SegmentedEncoder implements DataEncoder {
+
+        private final Executor executor;
+        private final int segmentSize;
+
+        private SegmentedEncoder(Executor executor, int segmentSize) {
+            if (segmentSize < 1) {
+                throw new IllegalArgumentException();
+            }
+            this.executor = executor;
+            this.segmentSize = segmentSize;
+        }
+
+        private int mcs;
+        private final List<byte[]> i_chunks = new ArrayList<>();
+        private int i_size;
+
+        /** Concatenated stream, {@code o_size} bytes long, {@code o_ptr} bytes of it are emitted already. */
+        private @Nullable byte[] o_stream;
+        private int o_size;
+        private int o_ptr;
+        private final byte[] o_buffer = new byte[255];
+
+        /** Bit accumulator of the concatenated stream, see {@link Encoder#acc}. */
+        private long acc;
+        private int acc_bits;
+
+        /**
+         * Compressed segment: {@code data} holds the clear code, the segment codes and the end of information code,
+         * {@code bits} is the number of bits of them, {@code ccs} is the code size the end of information code
+         * was written with. The next segment continues from where the end of information code begins.
+         * {@code next} is the code size a decoder reads the code following the last one with: the decoder adds
+         * its last dictionary entry only after reading the last code, so its code size may already be one larger
+         * than the code size of the encoder. It does not matter for the end of information code of a stream,
+         * since only zero padding follows it, but it does for the clear code of the next segment.
+         */
+        private record Segment(byte[] data, long bits, int ccs, int next) {}
+
+        @Override
+        public void initialize(int mcs) {
+            this.mcs = mcs;
+            i_chunks.clear();
+            i_size = 0;
+            o_stream = null;
+            o_size = 0;
+            o_ptr = 0;
+            acc = 0;
+            acc_bits = 0;
+        }
+
+        @Override
+        public void dispose() {
+            i_chunks.clear();
+            o_stream = null;
+        }
+
+        @Override
+        public void accept(byte[] chunk) {
+            i_chunks.add(chunk);
+            i_size += chunk.length;
+        }
+
+        @Override
+        public byte[] encode(boolean eof) {
+            if (!eof) {
+                return null;
+            }
+            if (o_stream == null) {
+                o_stream = concatenate(compress());
+            }
+            int remain = o_size - o_ptr;
+            if (remain >= o_buffer.length) {
+                System.arraycopy(o_stream, o_ptr, o_buffer, 0, o_buffer.length);
+                o_ptr += o_buffer.length;
+                return o_buffer;
+            } else if (remain > 0) {
+                byte[] out = Arrays.copyOfRange(o_stream, o_ptr, o_size);
+                o_ptr = o_size;
+                return out;
+            } else {
+                return null;
+            }
+        }
+
+        private List<Segment> compress() {
+            byte[] indices;
+            if (i_chunks.size() == 1) {
+                indices = i_chunks.get(0);
+            } else {
+                indices = new byte[i_size];
+                int offset = 0;
+                for (byte[] chunk : i_chunks) {
+                    System.arraycopy(chunk, 0, indices, offset, chunk.length);
+                    offset += chunk.length;
+                }
+            }
+            i_chunks.clear();
+            List<CompletableFuture<Segment>> tasks = new ArrayList<>();
+            int from = 0;
+            do {
+                int start = from;
+                int end = Math.min(indices.length, start + segmentSize);
+                tasks.add(CompletableFuture.supplyAsync(() -> compress(indices, start, end), executor));
+                from = end;
+            } while (from < indices.length);
+            List<Segment> segments = new ArrayList<>(tasks.size());
+            for (CompletableFuture<Segment> task : tasks) {
+                segments.add(Tasks.join(task));
+            }
+            return segments;
+        }
+
+        private Segment compress(byte[] indices, int from, int to) {
+            Encoder encoder = new Encoder();
+            encoder.initialize(mcs);
+            encoder.accept(from == 0 && to == indices.length ? indices : Arrays.copyOfRange(indices, from, to));
+            byte[] data = new byte[1 << 12];
+            int length = 0;
+            for (byte[] db = encoder.encode(true); db != null; db = encoder.encode(true)) {
+                if (data.length - length < db.length) {
+                    data = Arrays.copyOf(data, Math.max(2 * data.length, length + db.length));
+                }
+                System.arraycopy(db, 0, data, length, db.length);
+                length += db.length;
+            }
+            int next = encoder.ccs;
+            if (encoder.t_ptr == 1 << next && next < 12) {
+                next++;
+            }
+            return new Segment(data, encoder.o_bits, encoder.ccs, next);
+        }
+
+        /**
+         * Segments are copied without their leading clear codes and trailing end of information codes: every segment
+         * is preceded by a clear code written with the code size a decoder expects after the previous segment,
+         * and an end of information code ends the stream.
+         */
+        private byte[] concatenate(List<Segment> segments) {
+            // Clear and end of information codes may take a bit more than in the segments, one per segment at most:
+            long bits = segments.size();
+            for (Segment segment : segments) {
+                bits += segment.bits();
+            }
+            o_stream = new byte[(int) ((bits + 7) >>> 3)];
+            int c_clear = 1 << mcs;
+            int ccs = 1 + mcs;
+            for (int j = 0; j < segments.size(); j++) {
+                Segment segment = segments.get(j);
+                write(c_clear, ccs);
+                copy(segment.data(), 1 + mcs, segment.bits() - segment.ccs());
+                ccs = segment.next();
+            }
+            write(c_clear + 1, ccs);
+            if (acc_bits > 0) {
+                o_stream[o_size++] = (byte) acc;
+            }
+            return o_stream;
+        }
+
+        private void write(int c, int size) {
+            acc |= (long) c << acc_bits;
+            acc_bits += size;
+            while (acc_bits >= 8) {
+                o_stream[o_size++] = (byte) acc;
+                acc >>>= 8;
+                acc_bits -= 8;
+            }
+        }
+
+        /** Append bits {@code [from, to)} of {@code data}, least significant bit first. */
+        private void copy(byte[] data, long from, long to) {
+            long bit = from;
+            if ((bit & 7) != 0 && bit < to) {
+                int size = (int) Math.min(8 - (bit & 7), to - bit);
+                write((Byte.toUnsignedInt(data[(int) (bit >>> 3)]) >>> (bit & 7)) & ((1 << size) - 1), size);
+                bit += size;
+            }
+            for (; bit + 8 <= to; bit += 8) {
+                write(Byte.toUnsignedInt(data[(int) (bit >>> 3)]), 8);
+            }
+            if (bit < to) {
+                int size = (int) (to - bit);
+                write(Byte.toUnsignedInt(data[(int) (bit >>> 3)]) & ((1 << size) - 1), size);
+            }
         }
     }
 }
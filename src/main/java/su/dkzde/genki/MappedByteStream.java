@@ -0,0 +1,120 @@
+package su.dkzde.genki;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads a file through a read-only memory mapping, so that bytes are accessed in place without read calls
+ * and without copying through an intermediate buffer. A single mapping is limited to 2 GiB. The stream starts
+ * at the position of the channel, positions are relative to it as with {@link ChannelByteStream}.
+ */
+public class MappedByteStream implements ByteStream {
+
+    private final FileChannel backend;
+    private ByteBuffer buffer;
+    private ByteBuffer view;
+
+    public MappedByteStream(FileChannel backend) {
+        this.backend = backend;
+    }
+
+    @Override
+    public void init() throws IOException {
+        long origin = backend.position();
+        buffer = backend.map(FileChannel.MapMode.READ_ONLY, origin, Math.max(0, backend.size() - origin))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        view = buffer.asReadOnlyBuffer();
+    }
+
+    @Override
+    public void close() throws IOException {
+        backend.close();
+    }
+
+    @Override
+    public byte nextByte() throws DataChannelException {
+        if (buffer.hasRemaining()) {
+            return buffer.get();
+        } else {
+            throw new DataChannelException();
+        }
+    }
+
+    @Override
+    public byte[] nextByteSequence(byte[] sequence) throws DataChannelException {
+        if (buffer.remaining() >= sequence.length) {
+            buffer.get(sequence);
+            return sequence;
+        } else {
+            throw new DataChannelException();
+        }
+    }
+
+    @Override
+    public ByteBuffer nextByteSlice(int length) throws DataChannelException {
+        if (buffer.remaining() >= length) {
+            int position = buffer.position();
+            view.limit(position + length).position(position);
+            buffer.position(position + length);
+            return view;
+        } else {
+            throw new DataChannelException();
+        }
+    }
+
+    @Override
+    public void skip(int length) throws DataChannelException {
+        if (buffer.remaining() >= length) {
+            buffer.position(buffer.position() + length);
+        } else {
+            throw new DataChannelException();
+        }
+    }
+
+    @Override
+    public void transferDataBlocks(ByteSink target) throws IOException {
+        int position = buffer.position();
+        int end = Blocks.scan(buffer, position, buffer.limit());
+        if (end == buffer.limit() || buffer.get(end) != 0) {
+            throw new DataChannelException();
+        }
+        view.limit(end).position(position);
+        buffer.position(end + 1);
+        target.nextByteSequence(view);
+    }
+
+    @Override
+    public long position() {
+        return buffer.position();
+    }
+
+    @Override
+    public boolean seekable() {
+        return true;
+    }
+
+    @Override
+    public void seek(long position) throws DataChannelException {
+        if (position >= 0 && position <= buffer.limit()) {
+            buffer.position((int) position);
+        } else {
+            throw new DataChannelException();
+        }
+    }
+
+    @Override
+    public int nextUnsignedByte() throws DataChannelException {
+        return Byte.toUnsignedInt(nextByte());
+    }
+
+    @Override
+    public int nextUnsignedShort() throws DataChannelException {
+        if (buffer.remaining() >= 2) {
+            return Short.toUnsignedInt(buffer.getShort());
+        } else {
+            throw new DataChannelException();
+        }
+    }
+}
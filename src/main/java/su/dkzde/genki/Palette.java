@@ -0,0 +1,144 @@
+package su.dkzde.genki;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+
+/**
+ * Colors of a color table as {@code 0xRRGGBB} values, produced by a {@link Quantizer}. Color tables written
+ * to the stream hold a power of two entries, so the palette is padded with black when it is written.
+ * Palettes are immutable, colors are copied in and out.
+ */
+public final class Palette {
+
+    private final int[] colors;
+    private final int transparentIndex;
+    /** Created on first use, see {@link #mapper()}. */
+    private volatile @Nullable PaletteMapper mapper;
+
+    /** @param transparentIndex index reserved for transparent pixels, {@code -1} if there is none */
+    public Palette(int[] colors, int transparentIndex) {
+        if (colors.length < 1 || colors.length > 256 || transparentIndex >= colors.length) {
+            throw new IllegalArgumentException();
+        }
+        this.colors = colors.clone();
+        this.transparentIndex = transparentIndex;
+    }
+
+    /** @return copy of the colors */
+    public int[] colors() {
+        return colors.clone();
+    }
+
+    public int transparentIndex() {
+        return transparentIndex;
+    }
+
+    public int size() {
+        return colors.length;
+    }
+
+    /** @return value of the color table size field of descriptors, the smallest table holding the palette */
+    public byte colorTableSizeBits() {
+        byte bits = 0;
+        while (1 << (1 + bits) < colors.length) {
+            bits++;
+        }
+        return bits;
+    }
+
+    public int colorTableSize() {
+        return 1 << (1 + colorTableSizeBits());
+    }
+
+    /** @return padded color table as consecutive r, g, b triples */
+    public byte[] colorTable() {
+        byte[] table = new byte[3 * colorTableSize()];
+        for (int index = 0; index < colors.length; index++) {
+            table[3 * index] = (byte) (colors[index] >> 16);
+            table[3 * index + 1] = (byte) (colors[index] >> 8);
+            table[3 * index + 2] = (byte) colors[index];
+        }
+        return table;
+    }
+
+    public void visitColorTable(ImageVisitor visitor) {
+        byte[] table = colorTable();
+        for (int index = 0; index < table.length / 3; index++) {
+            visitor.visitColorTable(index, table[3 * index], table[3 * index + 1], table[3 * index + 2]);
+        }
+    }
+
+    public void visitGlobalColorTable(ProtoVisitor visitor) {
+        byte[] table = colorTable();
+        for (int index = 0; index < table.length / 3; index++) {
+            visitor.visitGlobalColorTable(index, table[3 * index], table[3 * index + 1], table[3 * index + 2]);
+        }
+    }
+
+    /** @return index of the opaque color closest to the {@code 0xRRGGBB} color, found by comparing all of them */
+    public int nearest(int rgb) {
+        int r = rgb >> 16 & 0xff;
+        int g = rgb >> 8 & 0xff;
+        int b = rgb & 0xff;
+        int nearest = 0;
+        int distance = Integer.MAX_VALUE;
+        for (int index = 0; index < colors.length; index++) {
+            if (index == transparentIndex) {
+                continue;
+            }
+            int dr = (colors[index] >> 16 & 0xff) - r;
+            int dg = (colors[index] >> 8 & 0xff) - g;
+            int db = (colors[index] & 0xff) - b;
+            int d = dr * dr + dg * dg + db * db;
+            if (d < distance) {
+                nearest = index;
+                distance = d;
+            }
+        }
+        return nearest;
+    }
+
+    public byte[] map(int[] argb) {
+        byte[] indices = new byte[argb.length];
+        map(argb, indices);
+        return indices;
+    }
+
+    /**
+     * Map ARGB pixels to indices of the closest colors, pixels with alpha below 128 are mapped
+     * to the transparent index if there is one.
+     */
+    public void map(int[] argb, byte[] indices) {
+        mapper().map(argb, indices);
+    }
+
+    /**
+     * @return mapper shared by all callers of the palette, created on first use, so that cells it fills serve
+     * every frame mapped with the palette; threads racing on the first call may create equivalent mappers of their own
+     */
+    public PaletteMapper mapper() {
+        PaletteMapper mapper = this.mapper;
+        if (mapper == null) {
+            mapper = new PaletteMapper(this);
+            this.mapper = mapper;
+        }
+        return mapper;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Palette palette
+                && transparentIndex == palette.transparentIndex
+                && Arrays.equals(colors, palette.colors);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(colors) + transparentIndex;
+    }
+
+    @Override
+    public String toString() {
+        return "Palette[colors=" + colors.length + ", transparentIndex=" + transparentIndex + "]";
+    }
+}
@@ -0,0 +1,226 @@
+package su.dkzde.genki;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Maps {@code 0xRRGGBB} colors to indices of the closest entries of a color table, with the same result as
+ * {@link Palette#nearest(int)} at a fraction of its cost. The color cube is split into 32<sup>3</sup> cells,
+ * every cell keeps the few entries that can be the closest one to any of its colors: those not farther from
+ * the cell than the farthest point of the cell is from the entry closest to it. Cells are filled on first use,
+ * so a mapper shared between frames and threads gets faster as it goes. On top of that, every mapping call keeps
+ * a small cache of the colors it has seen, pixels of the same color are mapped once; cache arrays are kept
+ * per thread rather than allocated by every call. Mappers are thread-safe.
+ */
+public final class PaletteMapper {
+
+    /** Bits per channel selecting a cell. */
+    private static final int CELL_BITS = 5;
+    private static final int CELL_SHIFT = 8 - CELL_BITS;
+    /** Number of entries of the cache of every mapping call. */
+    private static final int CACHE_BITS = 12;
+    /**
+     * Cache arrays are reused by mapping calls of the same thread, whatever mapper they belong to,
+     * so they are cleared by every call. A call never runs another one on its thread before it returns.
+     */
+    private static final ThreadLocal<Cache> CACHE = ThreadLocal.withInitial(Cache::new);
+
+    private static final class Cache {
+        private final int[] keys = new int[1 << CACHE_BITS];
+        private final byte[] values = new byte[1 << CACHE_BITS];
+    }
+
+    private final int[] colors;
+    private final int transparentIndex;
+    /** Indices of candidate entries of every cell, {@code null} for cells not used yet. */
+    private final AtomicReferenceArray<byte[]> cells = new AtomicReferenceArray<>(1 << 3 * CELL_BITS);
+
+    public PaletteMapper(Palette palette) {
+        this(palette.colors(), palette.transparentIndex());
+    }
+
+    /**
+     * @param colorTable color table as consecutive r, g, b triples, as passed to {@code visitColorTable}
+     * @param transparentIndex entry never mapped to, {@code -1} if there is none
+     */
+    public PaletteMapper(byte[] colorTable, int transparentIndex) {
+        this(colors(colorTable), transparentIndex);
+    }
+
+    private PaletteMapper(int[] colors, int transparentIndex) {
+        if (colors.length < 1 || colors.length > 256 || transparentIndex >= colors.length) {
+            throw new IllegalArgumentException();
+        }
+        this.colors = colors;
+        this.transparentIndex = transparentIndex;
+    }
+
+    private static int[] colors(byte[] colorTable) {
+        int[] colors = new int[colorTable.length / 3];
+        for (int index = 0; index < colors.length; index++) {
+            colors[index] = Byte.toUnsignedInt(colorTable[3 * index]) << 16
+                    | Byte.toUnsignedInt(colorTable[3 * index + 1]) << 8
+                    | Byte.toUnsignedInt(colorTable[3 * index + 2]);
+        }
+        return colors;
+    }
+
+    /** @return index of the opaque entry closest to the {@code 0xRRGGBB} color, the lowest one on ties */
+    public int nearest(int rgb) {
+        int r = rgb >> 16 & 0xff;
+        int g = rgb >> 8 & 0xff;
+        int b = rgb & 0xff;
+        int cell = (r >> CELL_SHIFT) << 2 * CELL_BITS | (g >> CELL_SHIFT) << CELL_BITS | b >> CELL_SHIFT;
+        byte[] candidates = cells.get(cell);
+        if (candidates == null) {
+            candidates = candidates(cell);
+            cells.set(cell, candidates);
+        }
+        int nearest = 0;
+        int distance = Integer.MAX_VALUE;
+        for (byte candidate : candidates) {
+            int index = Byte.toUnsignedInt(candidate);
+            int dr = (colors[index] >> 16 & 0xff) - r;
+            int dg = (colors[index] >> 8 & 0xff) - g;
+            int db = (colors[index] & 0xff) - b;
+            int d = dr * dr + dg * dg + db * db;
+            if (d < distance) {
+                nearest = index;
+                distance = d;
+            }
+        }
+        return nearest;
+    }
+
+    /** @return opaque entries that may be the closest ones to colors of the cell, in ascending order */
+    private byte[] candidates(int cell) {
+        int[] low = new int[3];
+        int[] high = new int[3];
+        for (int channel = 0; channel < 3; channel++) {
+            low[channel] = (cell >> (2 - channel) * CELL_BITS & (1 << CELL_BITS) - 1) << CELL_SHIFT;
+            high[channel] = low[channel] + (1 << CELL_SHIFT) - 1;
+        }
+        int[] closest = new int[colors.length];
+        int bound = Integer.MAX_VALUE;
+        for (int index = 0; index < colors.length; index++) {
+            if (index == transparentIndex) {
+                continue;
+            }
+            int min = 0;
+            int max = 0;
+            for (int channel = 0; channel < 3; channel++) {
+                int value = colors[index] >> 16 - 8 * channel & 0xff;
+                int below = Math.max(0, low[channel] - value);
+                int above = Math.max(0, value - high[channel]);
+                int far = Math.max(Math.abs(value - low[channel]), Math.abs(value - high[channel]));
+                min += (below + above) * (below + above);
+                max += far * far;
+            }
+            closest[index] = min;
+            bound = Math.min(bound, max);
+        }
+        byte[] candidates = new byte[colors.length];
+        int length = 0;
+        for (int index = 0; index < colors.length; index++) {
+            if (index != transparentIndex && closest[index] <= bound) {
+                candidates[length++] = (byte) index;
+            }
+        }
+        byte[] out = new byte[length];
+        System.arraycopy(candidates, 0, out, 0, length);
+        return out;
+    }
+
+    public byte[] map(int[] argb) {
+        byte[] indices = new byte[argb.length];
+        map(argb, 0, argb.length, indices);
+        return indices;
+    }
+
+    /**
+     * Map ARGB pixels to indices of the closest entries, pixels with alpha below 128 are mapped
+     * to the transparent index if there is one.
+     */
+    public void map(int[] argb, byte[] indices) {
+        map(argb, 0, argb.length, indices);
+    }
+
+    /** Map pixels of the range to indices at the same offsets. */
+    public void map(int[] argb, int from, int to, byte[] indices) {
+        map(argb, from, to, indices, 0);
+    }
+
+    /** Map pixels of the range to indices shifted by {@code offset}. */
+    private void map(int[] argb, int from, int to, byte[] indices, int offset) {
+        Cache cache = CACHE.get();
+        int[] keys = cache.keys;
+        byte[] values = cache.values;
+        // No 0xRRGGBB color has the sign bit set:
+        Arrays.fill(keys, -1);
+        for (int j = from; j < to; j++) {
+            int color = argb[j];
+            if (color >>> 24 < 0x80 && transparentIndex >= 0) {
+                indices[j + offset] = (byte) transparentIndex;
+                continue;
+            }
+            color &= 0xffffff;
+            int slot = color * 0x9e3779b1 >>> 32 - CACHE_BITS;
+            if (keys[slot] != color) {
+                keys[slot] = color;
+                values[slot] = (byte) nearest(color);
+            }
+            indices[j + offset] = values[slot];
+        }
+    }
+
+    /**
+     * Map rows of pixels concurrently: rows are split into {@code bands}, each one mapped as a separate task
+     * on the executor, the last one on the calling thread.
+     */
+    public void map(int[] argb, byte[] indices, int width, Executor executor, int bands) {
+        List<CompletableFuture<Void>> tasks = new ArrayList<>();
+        int size = bandSize(argb.length, width, bands);
+        int from = 0;
+        for (; from + size < argb.length; from += size) {
+            int start = from;
+            tasks.add(CompletableFuture.runAsync(() -> map(argb, start, start + size, indices), executor));
+        }
+        map(argb, from, argb.length, indices);
+        for (CompletableFuture<Void> task : tasks) {
+            Tasks.join(task);
+        }
+    }
+
+    /**
+     * Map rows of pixels concurrently and pass indices to the visitor band by band, in order, on the calling thread,
+     * so that the image encoder compresses a band while the following ones are mapped.
+     */
+    public void visitData(int[] argb, int width, ImageVisitor visitor, Executor executor, int bands) {
+        List<CompletableFuture<byte[]>> tasks = new ArrayList<>();
+        int size = bandSize(argb.length, width, bands);
+        for (int from = 0; from < argb.length; from += size) {
+            int start = from;
+            int end = Math.min(argb.length, from + size);
+            tasks.add(CompletableFuture.supplyAsync(() -> {
+                byte[] band = new byte[end - start];
+                map(argb, start, end, band, -start);
+                return band;
+            }, executor));
+        }
+        for (CompletableFuture<byte[]> task : tasks) {
+            visitor.visitData(Tasks.join(task));
+        }
+    }
+
+    private static int bandSize(int length, int width, int bands) {
+        if (width < 1 || bands < 1 || length % width != 0) {
+            throw new IllegalArgumentException();
+        }
+        int rows = length / width;
+        return Math.max(1, (rows + bands - 1) / bands) * width;
+    }
+}
@@ -0,0 +1,154 @@
+package su.dkzde.genki;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+/**
+ * Decodes whole frames like {@link FrameDecoder}, but concurrently: while the stream is parsed, the compressed
+ * data of each frame is collected into an array, and the LZW stream of the frame is decoded as a separate task
+ * on the executor. Frames are delivered to the visitor in stream order on the thread that drives the parser,
+ * each one in a fresh array. At most {@code maxInFlight} frames are pending at a time, the parser waits for
+ * the oldest one to complete when the limit is reached. Usage:
+ * <pre>
+ *     ParallelFrameDecoder frames = new ParallelFrameDecoder(DataDecoder::makeDecoder, visitor);
+ *     ...
+ *     public ProtoImageVisitor visitImage(ImageDescriptor descriptor) {
+ *         return frames.visitImage(descriptor);
+ *     }
+ *     ...
+ *     frames.visitEnd();
+ * </pre>
+ */
+public final class ParallelFrameDecoder {
+
+    private final FrameVisitor backend;
+    private final Supplier<DataDecoder> supplier;
+    private final Executor executor;
+    private final int maxInFlight;
+    private final ArrayDeque<Frame> pending = new ArrayDeque<>();
+
+    public ParallelFrameDecoder(Supplier<DataDecoder> supplier, FrameVisitor visitor) {
+        this(supplier, ForkJoinPool.commonPool(), 2 * ForkJoinPool.getCommonPoolParallelism(), visitor);
+    }
+
+    public ParallelFrameDecoder(Supplier<DataDecoder> supplier, Executor executor, int maxInFlight, FrameVisitor visitor) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException();
+        }
+        this.backend = visitor;
+        this.supplier = supplier;
+        this.executor = executor;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /** @return visitor that collects the local color table and the compressed data of the image */
+    public ProtoImageVisitor visitImage(ImageDescriptor descriptor) {
+        return new Frame(descriptor);
+    }
+
+    /** Wait for the remaining frames and deliver them, call it once the whole stream is parsed. */
+    public void visitEnd() {
+        while (!pending.isEmpty()) {
+            deliver(pending.poll());
+        }
+    }
+
+    private void submit(Frame frame) {
+        frame.result = CompletableFuture.supplyAsync(frame::decode, executor);
+        pending.add(frame);
+        while (pending.size() > maxInFlight || !pending.isEmpty() && pending.peek().result.isDone()) {
+            deliver(pending.poll());
+        }
+    }
+
+    private void deliver(Frame frame) {
+        byte[] indices = Tasks.join(frame.result);
+        for (int index = 0; index < frame.colorTableSize; index++) {
+            backend.visitColorTable(index,
+                    frame.colorTable[3 * index],
+                    frame.colorTable[3 * index + 1],
+                    frame.colorTable[3 * index + 2]);
+        }
+        backend.visitFrame(frame.descriptor, indices);
+    }
+
+    private final class Frame implements ProtoImageVisitor {
+
+        private final ImageDescriptor descriptor;
+        private byte[] colorTable = new byte[0];
+        private int colorTableSize;
+        private int lzwCodeSize;
+        /** Concatenated data sub-blocks, LZW decoders do not depend on the sub-block boundaries. */
+        private byte[] data = new byte[1 << 12];
+        private int length;
+        private CompletableFuture<byte[]> result;
+
+        private Frame(ImageDescriptor descriptor) {
+            this.descriptor = descriptor;
+        }
+
+        @Override
+        public void visitColorTable(int index, byte r, byte g, byte b) {
+            if (colorTable.length < 3 * (index + 1)) {
+                colorTable = Arrays.copyOf(colorTable, 3 * Math.max(index + 1, descriptor.colorTableSize()));
+            }
+            colorTable[3 * index] = r;
+            colorTable[3 * index + 1] = g;
+            colorTable[3 * index + 2] = b;
+            colorTableSize = Math.max(colorTableSize, index + 1);
+        }
+
+        @Override
+        public void visitDataStart(int lzwCodeSize) {
+            this.lzwCodeSize = lzwCodeSize;
+        }
+
+        @Override
+        public void visitDataBlock(byte[] block) {
+            reserve(block.length);
+            System.arraycopy(block, 0, data, length, block.length);
+            length += block.length;
+        }
+
+        @Override
+        public void visitDataBlock(ByteBuffer block) {
+            int size = block.remaining();
+            reserve(size);
+            block.get(block.position(), data, length, size);
+            length += size;
+        }
+
+        @Override
+        public void visitEnd() {
+            submit(this);
+        }
+
+        private void reserve(int size) {
+            if (data.length - length < size) {
+                data = Arrays.copyOf(data, Math.max(2 * data.length, length + size));
+            }
+        }
+
+        private byte[] decode() {
+            int width = descriptor.imageWidth();
+            int height = descriptor.imageHeight();
+            byte[] target = new byte[width * height];
+            DataDecoder decoder = supplier.get();
+            decoder.initialize(lzwCodeSize);
+            decoder.decode(ByteBuffer.wrap(data, 0, length), target, 0);
+            decoder.dispose();
+            if (descriptor.interlacingUsed()) {
+                byte[] canvas = new byte[target.length];
+                Interlace.deinterlace(target, canvas, width, height);
+                return canvas;
+            } else {
+                return target;
+            }
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package su.dkzde.genki;
+
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+/**
+ * Encodes whole frames concurrently: the indices of each frame are LZW-compressed as a separate task
+ * on the executor with its own {@link DataEncoder}, and finished frames are written to the visitor
+ * in the order they were submitted, on the thread that submits them. At most {@code maxInFlight} frames
+ * are pending at a time, submission waits for the oldest one to be written when the limit is reached.
+ * The header, the logical screen and the global color table are written to the visitor beforehand. Usage:
+ * <pre>
+ *     ProtoEncoder encoder = new ProtoEncoder(sink);
+ *     encoder.visitHeader(Version.gif89a);
+ *     encoder.visitLogicalScreenDescriptor(lsd);
+ *     ...
+ *     ParallelFrameEncoder frames = new ParallelFrameEncoder(DataEncoder::makeEncoder, lsd, encoder);
+ *     frames.visitFrame(extension, descriptor, null, indices);
+ *     ...
+ *     frames.visitEnd();
+ *     encoder.visitEnd();
+ * </pre>
+ */
+public final class ParallelFrameEncoder {
+
+    /** Maximum length of a data sub-block. */
+    private static final int BLOCK_SIZE = 255;
+
+    private final ProtoVisitor backend;
+    private final LogicalScreenDescriptor lsd;
+    private final Supplier<DataEncoder> supplier;
+    private final Executor executor;
+    private final int maxInFlight;
+    private final ArrayDeque<Frame> pending = new ArrayDeque<>();
+
+    public ParallelFrameEncoder(Supplier<DataEncoder> supplier, LogicalScreenDescriptor lsd, ProtoVisitor visitor) {
+        this(supplier, lsd, ForkJoinPool.commonPool(), 2 * ForkJoinPool.getCommonPoolParallelism(), visitor);
+    }
+
+    public ParallelFrameEncoder(
+            Supplier<DataEncoder> supplier,
+            LogicalScreenDescriptor lsd,
+            Executor executor,
+            int maxInFlight,
+            ProtoVisitor visitor) {
+
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException();
+        }
+        this.backend = visitor;
+        this.lsd = lsd;
+        this.supplier = supplier;
+        this.executor = executor;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * @param extension graphics control extension written before the image, if any
+     * @param colorTable local color table as consecutive r, g, b triples of all {@code colorTableSize} entries,
+     *                   required when the descriptor says so and ignored otherwise
+     * @param indices {@code imageWidth * imageHeight} indices in the order they are stored in the stream;
+     *                the array is read concurrently and must not be modified until the frame is written
+     */
+    public void visitFrame(
+            @Nullable GraphicsControlExtension extension,
+            ImageDescriptor descriptor,
+            @Nullable byte[] colorTable,
+            byte[] indices) {
+
+        if (descriptor.localColorTableUsed()
+                && (colorTable == null || colorTable.length != 3 * descriptor.colorTableSize())) {
+            throw new IllegalArgumentException();
+        }
+        Frame frame = new Frame(extension, descriptor, colorTable, ImageEncoder.minimumCodeSize(lsd, descriptor));
+        frame.result = CompletableFuture.supplyAsync(() -> frame.encode(indices), executor);
+        pending.add(frame);
+        while (pending.size() > maxInFlight || !pending.isEmpty() && pending.peek().result.isDone()) {
+            write(pending.poll());
+        }
+    }
+
+    /** Wait for the remaining frames and write them, the trailer is left to the caller. */
+    public void visitEnd() {
+        while (!pending.isEmpty()) {
+            write(pending.poll());
+        }
+    }
+
+    private void write(Frame frame) {
+        ByteBuffer data = Tasks.join(frame.result);
+        if (frame.extension != null) {
+            backend.visitGraphicsControlExtension(frame.extension);
+        }
+        ProtoImageVisitor image = backend.visitImage(frame.descriptor);
+        if (image == null) {
+            return;
+        }
+        if (frame.descriptor.localColorTableUsed()) {
+            for (int index = 0; index < frame.descriptor.colorTableSize(); index++) {
+                image.visitColorTable(index,
+                        frame.colorTable[3 * index],
+                        frame.colorTable[3 * index + 1],
+                        frame.colorTable[3 * index + 2]);
+            }
+        }
+        image.visitDataStart(frame.mcs);
+        int end = data.limit();
+        for (int position = 0; position < end; position += BLOCK_SIZE) {
+            data.limit(Math.min(end, position + BLOCK_SIZE)).position(position);
+            image.visitDataBlock(data);
+        }
+        image.visitEnd();
+    }
+
+    private final class Frame {
+
+        private final @Nullable GraphicsControlExtension extension;
+        private final ImageDescriptor descriptor;
+        private final @Nullable byte[] colorTable;
+        private final int mcs;
+        private CompletableFuture<ByteBuffer> result;
+
+        private Frame(
+                @Nullable GraphicsControlExtension extension,
+                ImageDescriptor descriptor,
+                @Nullable byte[] colorTable,
+                int mcs) {
+
+            this.extension = extension;
+            this.descriptor = descriptor;
+            this.colorTable = colorTable;
+            this.mcs = mcs;
+        }
+
+        /** @return concatenated data sub-blocks, they are split into sub-blocks again when written */
+        private ByteBuffer encode(byte[] indices) {
+            byte[] data = new byte[1 << 12];
+            int length = 0;
+            DataEncoder encoder = supplier.get();
+            encoder.initialize(mcs);
+            encoder.accept(indices);
+            for (boolean eof : new boolean[] {false, true}) {
+                for (byte[] db = encoder.encode(eof); db != null; db = encoder.encode(eof)) {
+                    if (data.length - length < db.length) {
+                        data = Arrays.copyOf(data, Math.max(2 * data.length, length + db.length));
+                    }
+                    System.arraycopy(db, 0, data, length, db.length);
+                    length += db.length;
+                }
+            }
+            encoder.dispose();
+            return ByteBuffer.wrap(data, 0, length);
+        }
+    }
+}
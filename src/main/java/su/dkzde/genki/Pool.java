@@ -0,0 +1,41 @@
+package su.dkzde.genki;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free store of idle instances, neither taking nor returning an instance allocates or blocks,
+ * so it is safe to use from virtual threads. Instances returned while every slot is occupied are dropped.
+ */
+final class Pool<T> {
+
+    private final AtomicReferenceArray<T> slots;
+
+    Pool(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException();
+        }
+        this.slots = new AtomicReferenceArray<>(capacity);
+    }
+
+    /** @return an idle instance or {@code null} if there is none */
+    @Nullable T poll() {
+        for (int j = 0; j < slots.length(); j++) {
+            if (slots.get(j) != null) {
+                T instance = slots.getAndSet(j, null);
+                if (instance != null) {
+                    return instance;
+                }
+            }
+        }
+        return null;
+    }
+
+    void offer(T instance) {
+        for (int j = 0; j < slots.length(); j++) {
+            if (slots.get(j) == null && slots.compareAndSet(j, null, instance)) {
+                return;
+            }
+        }
+    }
+}
@@ -1,6 +1,12 @@
 package su.dkzde.genki;
 
+import java.nio.ByteBuffer;
+
 public interface ProtoApplicationVisitor {
     void visitDataBlock(byte[] block);
+    /** Zero-copy variant of {@link #visitDataBlock(byte[])}, same as {@link ProtoImageVisitor#visitDataBlock(ByteBuffer)}. */
+    default void visitDataBlock(ByteBuffer block) {
+        visitDataBlock(Blocks.copy(block));
+    }
     void visitEnd();
 }
@@ -6,6 +6,7 @@ import java.io.IOException;
 public final class ProtoDecoder implements AutoCloseable {
 
     private final ByteStream source;
+    private boolean initialized = false;
 
     public ProtoDecoder(ByteStream source) {
         this.source = source;
@@ -17,23 +18,8 @@ public final class ProtoDecoder implements AutoCloseable {
     }
 
     public void accept(ProtoVisitor visitor) throws IOException {
-        source.init();
-        byte[] header = source.nextByteSequence(new byte[6]);
-        switch (new String(header)) {
-            case "GIF87a" -> visitor.visitHeader(Version.gif87a);
-            case "GIF89a" -> visitor.visitHeader(Version.gif89a);
-            default -> throw new DataChannelException();
-        }
-        LogicalScreenDescriptor lsd = LogicalScreenDescriptor.decode(source);
-        visitor.visitLogicalScreenDescriptor(lsd);
-        if (lsd.globalColorTableUsed()) {
-            for (int index = 0; index < lsd.colorTableSize(); index++) {
-                visitor.visitGlobalColorTable(index,
-                        source.nextByte(),
-                        source.nextByte(),
-                        source.nextByte());
-            }
-        }
+        start();
+        readScreen(visitor);
         while (true) {
             switch (source.nextUnsignedByte()) {
                 // Extensions:
@@ -44,13 +30,7 @@ public final class ProtoDecoder implements AutoCloseable {
                         case 0x01 -> skipExtensionBlock();
                         case 0xff -> readApplicationExtension(visitor.visitApplication(ApplicationDescriptor.decode(source)));
                         // Comment extension, skip it:
-                        case 0xfe -> {
-                            int bs = source.nextUnsignedByte();
-                            while (bs > 0) {
-                                source.nextByteSequence(new byte[bs]);
-                                bs = source.nextUnsignedByte();
-                            }
-                        }
+                        case 0xfe -> skipDataBlocks();
                     }
                 }
                 // Image:
@@ -67,57 +47,211 @@ public final class ProtoDecoder implements AutoCloseable {
         }
     }
 
-    private void skipExtensionBlock() throws IOException {
-        int blockSize = source.nextUnsignedByte();
-        while (blockSize-- > 0) {
-            source.nextByte();
+    /**
+     * Visit a single frame located with the index: the header, the logical screen and the global color table
+     * are read from the start of the stream, then the decoder seeks to the graphics control extension
+     * and the image of the frame. The source must be {@link ByteStream#seekable()}.
+     */
+    public void accept(FrameIndex index, int frame, ProtoVisitor visitor) throws IOException {
+        FrameIndex.Frame entry = index.frame(frame);
+        start();
+        readScreen(visitor);
+        if (entry.controlOffset() >= 0) {
+            source.seek(entry.controlOffset());
+            if (source.nextUnsignedByte() != 0x21 || source.nextUnsignedByte() != 0xf9) {
+                throw new DataChannelException();
+            }
+            visitor.visitGraphicsControlExtension(GraphicsControlExtension.decode(source));
+        }
+        source.seek(entry.descriptorOffset());
+        if (source.nextUnsignedByte() != 0x2c) {
+            throw new DataChannelException();
         }
+        ImageDescriptor descriptor = ImageDescriptor.decode(source);
+        readImage(descriptor, visitor.visitImage(descriptor));
+        visitor.visitEnd();
+    }
+
+    /** Probe the whole stream, see {@link #probe(int)}. */
+    public ProtoSummary probe() throws IOException {
+        return probe(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Gather metadata without visiting the stream: descriptors and extensions are decoded, while color tables
+     * and image data are skipped by sub-block lengths, so no sub-block is read into memory.
+     * Probing stops at the trailer or once {@code frameLimit} images are reached, whichever comes first.
+     * The decoder may probe again or {@link #accept(ProtoVisitor)} the stream afterwards only if the source
+     * is {@link ByteStream#seekable()}, as the stream is read again from the start.
+     * @throws IOException also if the stream was read before and cannot seek back to the start
+     */
+    public ProtoSummary probe(int frameLimit) throws IOException {
+        start();
+        Screen screen = readScreen(null);
+        LogicalScreenDescriptor lsd = screen.descriptor();
+        int frames = 0;
+        long duration = 0;
+        int loopCount = -1;
+        int localColorTableSize = 0;
+        boolean complete = false;
+        probe: while (frames < frameLimit) {
+            switch (source.nextUnsignedByte()) {
+                // Extensions:
+                case 0x21 -> {
+                    switch (source.nextUnsignedByte()) {
+                        case 0xf9 -> duration += GraphicsControlExtension.decode(source).delayTime();
+                        case 0xff -> loopCount = readLoopCount(ApplicationDescriptor.decode(source), loopCount);
+                        default -> skipDataBlocks();
+                    }
+                }
+                // Image:
+                case 0x2c -> {
+                    ImageDescriptor descriptor = ImageDescriptor.decode(source);
+                    frames++;
+                    if (descriptor.localColorTableUsed()) {
+                        localColorTableSize = Math.max(localColorTableSize, descriptor.colorTableSize());
+                    }
+                    readImage(descriptor, null);
+                }
+                // Trailer byte:
+                case 0x3b -> {
+                    complete = true;
+                    break probe;
+                }
+            }
+        }
+        return new ProtoSummary(
+                screen.version(),
+                lsd.logicalScreenWidth(),
+                lsd.logicalScreenHeight(),
+                lsd.globalColorTableUsed() ? lsd.colorTableSize() : 0,
+                frames,
+                duration,
+                loopCount,
+                localColorTableSize,
+                complete);
+    }
+
+    /** @return loop count of a NETSCAPE looping extension, {@code loopCount} for any other application extension */
+    private int readLoopCount(ApplicationDescriptor descriptor, int loopCount) throws IOException {
+        String application = new String(descriptor.identifier()) + new String(descriptor.authenticationCode());
         int bs = source.nextUnsignedByte();
         while (bs > 0) {
-            source.nextByteSequence(new byte[bs]);
+            if (bs >= 3 && (application.equals("NETSCAPE2.0") || application.equals("ANIMEXTS1.0"))) {
+                if (source.nextUnsignedByte() == 0x01) {
+                    loopCount = source.nextUnsignedShort();
+                    source.skip(bs - 3);
+                } else {
+                    source.skip(bs - 1);
+                }
+            } else {
+                source.skip(bs);
+            }
             bs = source.nextUnsignedByte();
         }
+        return loopCount;
     }
 
-    private void readApplicationExtension(@Nullable ProtoApplicationVisitor visitor) throws IOException {
+    /** Initialize the source on first use, later calls read it again from the start. */
+    private void start() throws IOException {
+        if (initialized) {
+            source.seek(0);
+        } else {
+            source.init();
+            initialized = true;
+        }
+    }
+
+    /** @return offset of the next byte to be read from the source */
+    long position() {
+        return source.position();
+    }
+
+    private record Screen(Version version, LogicalScreenDescriptor descriptor) {}
+
+    /** Read the header and the logical screen, the global color table is skipped if there is no visitor. */
+    private Screen readScreen(@Nullable ProtoVisitor visitor) throws IOException {
+        byte[] header = source.nextByteSequence(new byte[6]);
+        Version version = switch (new String(header)) {
+            case "GIF87a" -> Version.gif87a;
+            case "GIF89a" -> Version.gif89a;
+            default -> throw new DataChannelException();
+        };
+        if (visitor != null) {
+            visitor.visitHeader(version);
+        }
+        LogicalScreenDescriptor lsd = LogicalScreenDescriptor.decode(source);
+        if (visitor != null) {
+            visitor.visitLogicalScreenDescriptor(lsd);
+        }
+        if (lsd.globalColorTableUsed()) {
+            if (visitor == null) {
+                source.skip(3 * lsd.colorTableSize());
+                return new Screen(version, lsd);
+            }
+            for (int index = 0; index < lsd.colorTableSize(); index++) {
+                visitor.visitGlobalColorTable(index,
+                        source.nextByte(),
+                        source.nextByte(),
+                        source.nextByte());
+            }
+        }
+        return new Screen(version, lsd);
+    }
+
+    private void skipExtensionBlock() throws IOException {
+        source.skip(source.nextUnsignedByte());
+        skipDataBlocks();
+    }
+
+    /** Skip a sequence of data sub-blocks up to and including the block terminator. */
+    private void skipDataBlocks() throws IOException {
         int bs = source.nextUnsignedByte();
         while (bs > 0) {
-            byte[] block = source.nextByteSequence(new byte[bs]);
-            if (visitor != null) {
-                visitor.visitDataBlock(block);
-            }
+            source.skip(bs);
             bs = source.nextUnsignedByte();
         }
-        if (visitor != null) {
-            visitor.visitEnd();
+    }
+
+    private void readApplicationExtension(@Nullable ProtoApplicationVisitor visitor) throws IOException {
+        if (visitor == null) {
+            skipDataBlocks();
+            return;
         }
+        int bs = source.nextUnsignedByte();
+        while (bs > 0) {
+            visitor.visitDataBlock(source.nextByteSlice(bs));
+            bs = source.nextUnsignedByte();
+        }
+        visitor.visitEnd();
     }
 
     private void readImage(ImageDescriptor descriptor, @Nullable ProtoImageVisitor visitor) throws IOException {
+        if (visitor == null) {
+            if (descriptor.localColorTableUsed()) {
+                source.skip(3 * descriptor.colorTableSize());
+            }
+            // LZW minimum code size and image data:
+            source.skip(1);
+            skipDataBlocks();
+            return;
+        }
         if (descriptor.localColorTableUsed()) {
             for (int index = 0; index < descriptor.colorTableSize(); index++) {
-                byte r = source.nextByte();
-                byte g = source.nextByte();
-                byte b = source.nextByte();
-                if (visitor != null) {
-                    visitor.visitColorTable(index, r, g, b);
-                }
+                visitor.visitColorTable(index,
+                        source.nextByte(),
+                        source.nextByte(),
+                        source.nextByte());
             }
         }
-        int lzwCodeSize = source.nextUnsignedByte();
-        if (visitor != null) {
-            visitor.visitDataStart(lzwCodeSize);
-        }
-        int bs = source.nextUnsignedByte();
-        while (bs > 0) {
-            byte[] block = source.nextByteSequence(new byte[bs]);
-            if (visitor != null) {
-                visitor.visitDataBlock(block);
+        visitor.visitDataStart(source.nextUnsignedByte());
+        if (!visitor.visitRawData(source)) {
+            int bs = source.nextUnsignedByte();
+            while (bs > 0) {
+                visitor.visitDataBlock(source.nextByteSlice(bs));
+                bs = source.nextUnsignedByte();
             }
-            bs = source.nextUnsignedByte();
-        }
-        if (visitor != null) {
-            visitor.visitEnd();
         }
+        visitor.visitEnd();
     }
 }
@@ -2,6 +2,7 @@ package su.dkzde.genki;
 
 import javax.annotation.Nullable;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 public class ProtoEncoder implements AutoCloseable, ProtoVisitor {
 
@@ -50,6 +51,14 @@ public class ProtoEncoder implements AutoCloseable, ProtoVisitor {
                 throw new ProtoEncoderException(exception);
             }
         }
+        @Override public void visitDataBlock(ByteBuffer block) {
+            try {
+                backend.nextUnsignedByte(block.remaining());
+                backend.nextByteSequence(block);
+            } catch (IOException exception) {
+                throw new ProtoEncoderException(exception);
+            }
+        }
         @Override public void visitEnd() {
             try {
                 backend.nextUnsignedByte(0x00);
@@ -127,6 +136,23 @@ public class ProtoEncoder implements AutoCloseable, ProtoVisitor {
                 throw new ProtoEncoderException(exception);
             }
         }
+        @Override public void visitDataBlock(ByteBuffer block) {
+            try {
+                backend.nextUnsignedByte(block.remaining());
+                backend.nextByteSequence(block);
+            } catch (IOException exception) {
+                throw new ProtoEncoderException(exception);
+            }
+        }
+        /** Compressed data is copied as it is, it is never decoded and encoded again. */
+        @Override public boolean visitRawData(ByteStream source) {
+            try {
+                source.transferDataBlocks(backend);
+                return true;
+            } catch (IOException exception) {
+                throw new ProtoEncoderException(exception);
+            }
+        }
         @Override public void visitEnd() {
             try {
                 backend.nextUnsignedByte(0x00);
@@ -1,8 +1,27 @@
 package su.dkzde.genki;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
 public interface ProtoImageVisitor {
     void visitColorTable(int index, byte r, byte g, byte b);
     void visitDataStart(int lzwCodeSize);
     void visitDataBlock(byte[] block);
+    /**
+     * Zero-copy variant of {@link #visitDataBlock(byte[])}: remaining bytes of the read-only buffer form the block,
+     * the buffer is only valid during the call and its position must not be changed.
+     */
+    default void visitDataBlock(ByteBuffer block) {
+        visitDataBlock(Blocks.copy(block));
+    }
+    /**
+     * Raw copy of the image data: visitors writing the compressed data out unchanged may take the data sub-blocks
+     * from the source with {@link ByteStream#transferDataBlocks(ByteSink)} instead of being visited block by block.
+     * Decoders that do not support it keep calling {@link #visitDataBlock}, {@link #visitEnd()} is called either way.
+     * @return whether the data sub-blocks have been consumed
+     */
+    default boolean visitRawData(ByteStream source) throws IOException {
+        return false;
+    }
     void visitEnd();
 }
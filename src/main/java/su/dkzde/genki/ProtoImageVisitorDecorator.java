@@ -1,11 +1,29 @@
 package su.dkzde.genki;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Forwards every call to the downstream visitor. Zero-copy sub-blocks are copied and passed to
+ * {@link #visitDataBlock(byte[])}, so subclasses overriding it see every sub-block; subclasses that do not
+ * inspect sub-blocks opt in to passing buffers downstream as they are, along with raw image data.
+ */
 public abstract class ProtoImageVisitorDecorator implements ProtoImageVisitor {
 
     private final ProtoImageVisitor downstream;
+    private final boolean passThrough;
 
     public ProtoImageVisitorDecorator(ProtoImageVisitor downstream) {
+        this(downstream, false);
+    }
+
+    /**
+     * @param passThrough whether sub-blocks, and raw image data if the downstream visitor takes it,
+     *                    are passed downstream without going through {@link #visitDataBlock(byte[])}
+     */
+    public ProtoImageVisitorDecorator(ProtoImageVisitor downstream, boolean passThrough) {
         this.downstream = downstream;
+        this.passThrough = passThrough;
     }
 
     @Override
@@ -23,6 +41,21 @@ public abstract class ProtoImageVisitorDecorator implements ProtoImageVisitor {
         downstream.visitDataBlock(block);
     }
 
+    @Override
+    public void visitDataBlock(ByteBuffer block) {
+        if (passThrough) {
+            downstream.visitDataBlock(block);
+        } else {
+            visitDataBlock(Blocks.copy(block));
+        }
+    }
+
+    /** Raw image data is passed downstream only by decorators passing sub-blocks through, as it bypasses them. */
+    @Override
+    public boolean visitRawData(ByteStream source) throws IOException {
+        return passThrough && downstream.visitRawData(source);
+    }
+
     @Override
     public void visitEnd() {
         downstream.visitEnd();
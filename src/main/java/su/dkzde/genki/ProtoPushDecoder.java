@@ -0,0 +1,296 @@
+package su.dkzde.genki;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Push counterpart of {@link ProtoDecoder}: instead of pulling bytes from a blocking {@link ByteStream},
+ * the stream is fed in chunks of any size as they arrive and the visitor is driven as far as the bytes
+ * allow, so a single thread can parse many streams at once. The parser is a state machine where every state
+ * needs a known number of bytes: a field, a descriptor, a color table or a data sub-block. Whenever a chunk
+ * holds them entirely, they are processed in place, data sub-blocks included, otherwise they are collected
+ * into an internal buffer across chunks. Unwanted sub-blocks are skipped without being collected. Usage:
+ * <pre>
+ *     ProtoPushDecoder decoder = new ProtoPushDecoder(visitor);
+ *     ...
+ *     decoder.feed(chunk);
+ *     ...
+ *     decoder.end();
+ * </pre>
+ */
+public final class ProtoPushDecoder {
+
+    private enum State {
+        HEADER,
+        SCREEN,
+        GLOBAL_COLOR_TABLE,
+        BLOCK,
+        EXTENSION_LABEL,
+        GRAPHICS_CONTROL_EXTENSION,
+        APPLICATION_DESCRIPTOR,
+        EXTENSION_HEADER,
+        IMAGE_DESCRIPTOR,
+        LOCAL_COLOR_TABLE,
+        LZW_CODE_SIZE,
+        DATA_BLOCK_SIZE,
+        DATA_BLOCK,
+        SKIP,
+        DONE,
+    }
+
+    /** Consumer of the data sub-blocks being read. */
+    private enum Target {
+        IMAGE,
+        APPLICATION,
+        NONE,
+    }
+
+    private final ProtoVisitor visitor;
+    private State state = State.HEADER;
+    /** Number of bytes the current state needs. */
+    private int need = 6;
+
+    /** Bytes of the current state collected across chunks, the largest state is a color table. */
+    private final ByteBuffer pending = ByteBuffer.allocate(3 * 256);
+    private final ByteBuffer pendingView = pending.asReadOnlyBuffer();
+    private final UnitStream unit = new UnitStream();
+
+    private Target target = Target.NONE;
+    private LogicalScreenDescriptor lsd;
+    private ImageDescriptor descriptor;
+    private @Nullable ProtoImageVisitor image;
+    private @Nullable ProtoApplicationVisitor application;
+
+    public ProtoPushDecoder(ProtoVisitor visitor) {
+        this.visitor = visitor;
+    }
+
+    /**
+     * Parse remaining bytes of the chunk, they are consumed entirely unless the trailer is reached.
+     * Bytes that do not complete a field are retained, so the chunk can be reused once the call returns.
+     */
+    public void feed(ByteBuffer chunk) throws DataChannelException {
+        ByteBuffer input = chunk.asReadOnlyBuffer();
+        while (state != State.DONE && input.hasRemaining()) {
+            if (state == State.SKIP) {
+                int n = Math.min(need, input.remaining());
+                input.position(input.position() + n);
+                need -= n;
+                if (need == 0) {
+                    expect(State.DATA_BLOCK_SIZE, 1);
+                }
+            } else if (pending.position() == 0 && input.remaining() >= need) {
+                int start = input.position();
+                int limit = input.limit();
+                int size = need;
+                input.limit(start + size);
+                process(input);
+                input.limit(limit).position(start + size);
+            } else {
+                int n = Math.min(need - pending.position(), input.remaining());
+                pending.put(pending.position(), input, input.position(), n);
+                pending.position(pending.position() + n);
+                input.position(input.position() + n);
+                if (pending.position() == need) {
+                    pendingView.limit(need).position(0);
+                    pending.clear();
+                    process(pendingView);
+                }
+            }
+        }
+        chunk.position(input.position());
+    }
+
+    /** @return whether the trailer is reached, bytes fed afterwards are left unconsumed */
+    public boolean isDone() {
+        return state == State.DONE;
+    }
+
+    /** Signal the end of the stream, it is an error unless the trailer is reached. */
+    public void end() throws DataChannelException {
+        if (state != State.DONE) {
+            throw new DataChannelException();
+        }
+    }
+
+    private void expect(State state, int need) {
+        this.state = state;
+        this.need = need;
+    }
+
+    /** Process {@code need} remaining bytes of the buffer, the position of the buffer may be changed. */
+    private void process(ByteBuffer bytes) {
+        unit.source = bytes;
+        switch (state) {
+            case HEADER -> {
+                switch (new String(unit.nextByteSequence(new byte[6]))) {
+                    case "GIF87a" -> visitor.visitHeader(Version.gif87a);
+                    case "GIF89a" -> visitor.visitHeader(Version.gif89a);
+                    default -> throw new DataChannelException();
+                }
+                expect(State.SCREEN, 7);
+            }
+            case SCREEN -> {
+                lsd = decode(LogicalScreenDescriptor::decode);
+                visitor.visitLogicalScreenDescriptor(lsd);
+                if (lsd.globalColorTableUsed()) {
+                    expect(State.GLOBAL_COLOR_TABLE, 3 * lsd.colorTableSize());
+                } else {
+                    expect(State.BLOCK, 1);
+                }
+            }
+            case GLOBAL_COLOR_TABLE -> {
+                for (int index = 0; index < lsd.colorTableSize(); index++) {
+                    visitor.visitGlobalColorTable(index,
+                            unit.nextByte(),
+                            unit.nextByte(),
+                            unit.nextByte());
+                }
+                expect(State.BLOCK, 1);
+            }
+            case BLOCK -> {
+                switch (unit.nextUnsignedByte()) {
+                    case 0x21 -> expect(State.EXTENSION_LABEL, 1);
+                    case 0x2c -> expect(State.IMAGE_DESCRIPTOR, 9);
+                    case 0x3b -> {
+                        visitor.visitEnd();
+                        expect(State.DONE, 0);
+                    }
+                }
+            }
+            case EXTENSION_LABEL -> {
+                switch (unit.nextUnsignedByte()) {
+                    case 0xf9 -> expect(State.GRAPHICS_CONTROL_EXTENSION, 6);
+                    case 0xff -> expect(State.APPLICATION_DESCRIPTOR, 12);
+                    // Plain text extension, skip it:
+                    case 0x01 -> expect(State.EXTENSION_HEADER, 1);
+                    // Comment extension, skip it:
+                    case 0xfe -> {
+                        target = Target.NONE;
+                        expect(State.DATA_BLOCK_SIZE, 1);
+                    }
+                    default -> expect(State.BLOCK, 1);
+                }
+            }
+            case GRAPHICS_CONTROL_EXTENSION -> {
+                visitor.visitGraphicsControlExtension(decode(GraphicsControlExtension::decode));
+                expect(State.BLOCK, 1);
+            }
+            case APPLICATION_DESCRIPTOR -> {
+                application = visitor.visitApplication(decode(ApplicationDescriptor::decode));
+                target = application != null ? Target.APPLICATION : Target.NONE;
+                expect(State.DATA_BLOCK_SIZE, 1);
+            }
+            case EXTENSION_HEADER -> {
+                target = Target.NONE;
+                int size = unit.nextUnsignedByte();
+                if (size > 0) {
+                    expect(State.SKIP, size);
+                } else {
+                    expect(State.DATA_BLOCK_SIZE, 1);
+                }
+            }
+            case IMAGE_DESCRIPTOR -> {
+                descriptor = decode(ImageDescriptor::decode);
+                image = visitor.visitImage(descriptor);
+                if (descriptor.localColorTableUsed()) {
+                    expect(State.LOCAL_COLOR_TABLE, 3 * descriptor.colorTableSize());
+                } else {
+                    expect(State.LZW_CODE_SIZE, 1);
+                }
+            }
+            case LOCAL_COLOR_TABLE -> {
+                if (image != null) {
+                    for (int index = 0; index < descriptor.colorTableSize(); index++) {
+                        image.visitColorTable(index,
+                                unit.nextByte(),
+                                unit.nextByte(),
+                                unit.nextByte());
+                    }
+                }
+                expect(State.LZW_CODE_SIZE, 1);
+            }
+            case LZW_CODE_SIZE -> {
+                int lzwCodeSize = unit.nextUnsignedByte();
+                if (image != null) {
+                    image.visitDataStart(lzwCodeSize);
+                    target = Target.IMAGE;
+                } else {
+                    target = Target.NONE;
+                }
+                expect(State.DATA_BLOCK_SIZE, 1);
+            }
+            case DATA_BLOCK_SIZE -> {
+                int size = unit.nextUnsignedByte();
+                if (size > 0) {
+                    expect(target == Target.NONE ? State.SKIP : State.DATA_BLOCK, size);
+                } else {
+                    switch (target) {
+                        case IMAGE -> image.visitEnd();
+                        case APPLICATION -> application.visitEnd();
+                    }
+                    target = Target.NONE;
+                    expect(State.BLOCK, 1);
+                }
+            }
+            case DATA_BLOCK -> {
+                switch (target) {
+                    case IMAGE -> image.visitDataBlock(bytes);
+                    case APPLICATION -> application.visitDataBlock(bytes);
+                }
+                expect(State.DATA_BLOCK_SIZE, 1);
+            }
+        }
+    }
+
+    private interface Field<T> {
+        T decode(ByteStream source) throws IOException;
+    }
+
+    /** Decode a structure from the current bytes with the same routines {@link ProtoDecoder} uses. */
+    private <T> T decode(Field<T> field) {
+        try {
+            return field.decode(unit);
+        } catch (IOException exception) {
+            // Bytes of the current state are always available, the stream over them does not do any I/O:
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    /** Stream over the bytes of the current state. */
+    private static final class UnitStream implements ByteStream {
+
+        private ByteBuffer source;
+
+        @Override public void init() {}
+
+        @Override public void close() {}
+
+        @Override
+        public byte nextByte() {
+            return source.get();
+        }
+
+        @Override
+        public byte[] nextByteSequence(byte[] sequence) {
+            source.get(sequence);
+            return sequence;
+        }
+
+        @Override
+        public long position() {
+            return source.position();
+        }
+
+        @Override
+        public int nextUnsignedByte() {
+            return Byte.toUnsignedInt(source.get());
+        }
+
+        @Override
+        public int nextUnsignedShort() {
+            return nextUnsignedByte() | nextUnsignedByte() << 8;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package su.dkzde.genki;
+
+/**
+ * Metadata of a stream gathered by {@link ProtoDecoder#probe(int)} without decoding image data.
+ * @param globalColorTableSize number of entries of the global color table, {@code 0} without one
+ * @param frames number of probed images
+ * @param duration sum of delay times of the probed graphics control extensions, in hundredths of a second
+ * @param loopCount loop count of the NETSCAPE application extension, {@code 0} loops forever, {@code -1} without one
+ * @param localColorTableSize number of entries of the largest local color table, {@code 0} if no probed image has one
+ * @param complete whether the trailer was reached, probing stopped at the frame limit otherwise
+ */
+public record ProtoSummary(
+        Version version,
+        int width,
+        int height,
+        int globalColorTableSize,
+        int frames,
+        long duration,
+        int loopCount,
+        int localColorTableSize,
+        boolean complete) {}
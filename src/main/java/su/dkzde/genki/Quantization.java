@@ -0,0 +1,252 @@
+package su.dkzde.genki;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Color quantization algorithms working on bins of a {@link ColorHistogram}, every bin stands for the mean color
+ * of its pixels weighted by their number.
+ */
+class Quantization {
+    private Quantization() {}
+
+    public static Quantizer makeMedianCut() {
+        return new MedianCut();
+    }
+
+    public static Quantizer makeOctree() {
+        return new Octree();
+    }
+
+    /** @return bins of the histogram holding any pixels */
+    static int[] occupied(ColorHistogram histogram) {
+        int[] bins = new int[histogram.bins()];
+        int length = 0;
+        for (int bin = 0; bin < bins.length; bin++) {
+            if (histogram.count(bin) > 0) {
+                bins[length++] = bin;
+            }
+        }
+        return Arrays.copyOf(bins, length);
+    }
+
+    /** @return {@code 0xRRGGBB} mean of the sums of channels */
+    static int mean(long count, long r, long g, long b) {
+        long half = count / 2;
+        return (int) ((r + half) / count) << 16 | (int) ((g + half) / count) << 8 | (int) ((b + half) / count);
+    }
+
+    private static final class MedianCut implements Quantizer {
+
+        @Override
+        public int[] colors(ColorHistogram histogram, int colors) {
+            int[] bins = occupied(histogram);
+            int[] means = new int[bins.length];
+            for (int j = 0; j < bins.length; j++) {
+                means[j] = histogram.mean(bins[j]);
+            }
+            PriorityQueue<Box> boxes = new PriorityQueue<>(Comparator.comparingLong((Box box) -> box.score).reversed());
+            List<Box> done = new ArrayList<>();
+            if (bins.length > 0) {
+                boxes.add(new Box(histogram, bins, means, 0, bins.length));
+            }
+            while (boxes.size() + done.size() < colors && !boxes.isEmpty()) {
+                Box box = boxes.poll();
+                if (box.score == 0) {
+                    done.add(box);
+                    continue;
+                }
+                int split = box.split();
+                boxes.add(new Box(histogram, bins, means, box.from, split));
+                boxes.add(new Box(histogram, bins, means, split, box.to));
+            }
+            done.addAll(boxes);
+            int[] out = new int[done.size()];
+            for (int j = 0; j < out.length; j++) {
+                out[j] = done.get(j).mean();
+            }
+            return out;
+        }
+
+        /** Range of bins ordered along the channel being split, together with their mean colors. */
+        private static final class Box {
+
+            private final ColorHistogram histogram;
+            private final int[] bins;
+            private final int[] means;
+            private final int from;
+            private final int to;
+            private long count;
+            /** Channel with the widest range of values, shifted to select it from a {@code 0xRRGGBB} color. */
+            private final int shift;
+            private final long score;
+
+            private Box(ColorHistogram histogram, int[] bins, int[] means, int from, int to) {
+                this.histogram = histogram;
+                this.bins = bins;
+                this.means = means;
+                this.from = from;
+                this.to = to;
+                int[] min = {255, 255, 255};
+                int[] max = {0, 0, 0};
+                for (int j = from; j < to; j++) {
+                    count += histogram.count(bins[j]);
+                    for (int channel = 0; channel < 3; channel++) {
+                        int value = means[j] >> 16 - 8 * channel & 0xff;
+                        min[channel] = Math.min(min[channel], value);
+                        max[channel] = Math.max(max[channel], value);
+                    }
+                }
+                int widest = 0;
+                for (int channel = 1; channel < 3; channel++) {
+                    if (max[channel] - min[channel] > max[widest] - min[widest]) {
+                        widest = channel;
+                    }
+                }
+                this.shift = 16 - 8 * widest;
+                this.score = to - from > 1 ? count * (max[widest] - min[widest] + 1) : 0;
+            }
+
+            /** Order bins along the widest channel, @return index splitting pixels of the box in halves */
+            private int split() {
+                long[] keys = new long[to - from];
+                for (int j = from; j < to; j++) {
+                    keys[j - from] = (long) (means[j] >> shift & 0xff) << 32 | j;
+                }
+                Arrays.sort(keys);
+                int[] sortedBins = new int[keys.length];
+                int[] sortedMeans = new int[keys.length];
+                for (int j = 0; j < keys.length; j++) {
+                    int source = (int) keys[j];
+                    sortedBins[j] = bins[source];
+                    sortedMeans[j] = means[source];
+                }
+                System.arraycopy(sortedBins, 0, bins, from, keys.length);
+                System.arraycopy(sortedMeans, 0, means, from, keys.length);
+                long half = 0;
+                int split = from + 1;
+                for (; split < to - 1; split++) {
+                    half += histogram.count(bins[split - 1]);
+                    if (2 * half >= count) {
+                        break;
+                    }
+                }
+                return split;
+            }
+
+            private int mean() {
+                long r = 0;
+                long g = 0;
+                long b = 0;
+                for (int j = from; j < to; j++) {
+                    r += histogram.sum(bins[j], 0);
+                    g += histogram.sum(bins[j], 1);
+                    b += histogram.sum(bins[j], 2);
+                }
+                return Quantization.mean(count, r, g, b);
+            }
+        }
+    }
+
+    private static final class Octree implements Quantizer {
+
+        @Override
+        public int[] colors(ColorHistogram histogram, int colors) {
+            int depth = histogram.bits();
+            Node root = new Node();
+            List<List<Node>> levels = new ArrayList<>();
+            for (int level = 0; level < depth; level++) {
+                levels.add(new ArrayList<>());
+            }
+            int leaves = 0;
+            for (int bin : occupied(histogram)) {
+                long count = histogram.count(bin);
+                long r = histogram.sum(bin, 0);
+                long g = histogram.sum(bin, 1);
+                long b = histogram.sum(bin, 2);
+                int color = mean(count, r, g, b);
+                Node node = root;
+                for (int level = 0; level < depth; level++) {
+                    if (node.children == null) {
+                        node.children = new Node[8];
+                        levels.get(level).add(node);
+                    }
+                    int bit = 7 - level;
+                    int child = (color >> 16 + bit & 1) << 2 | (color >> 8 + bit & 1) << 1 | color >> bit & 1;
+                    if (node.children[child] == null) {
+                        node.children[child] = new Node();
+                    }
+                    node.count += count;
+                    node = node.children[child];
+                }
+                if (node.count == 0) {
+                    leaves++;
+                }
+                node.add(count, r, g, b);
+            }
+            // Fold the deepest nodes first, those with the fewest pixels first on each level:
+            for (int level = depth - 1; level >= 0 && leaves > colors; level--) {
+                List<Node> nodes = levels.get(level);
+                nodes.sort(Comparator.comparingLong(node -> node.count));
+                for (int j = 0; j < nodes.size() && leaves > colors; j++) {
+                    leaves -= nodes.get(j).fold() - 1;
+                }
+            }
+            List<Integer> out = new ArrayList<>();
+            root.collect(out);
+            int[] table = new int[out.size()];
+            for (int j = 0; j < table.length; j++) {
+                table[j] = out.get(j);
+            }
+            return table;
+        }
+
+        private static final class Node {
+
+            /** Number of pixels of the subtree, sums are kept by leaves only. */
+            private long count;
+            private long r;
+            private long g;
+            private long b;
+            private Node[] children;
+
+            private void add(long count, long r, long g, long b) {
+                this.count += count;
+                this.r += r;
+                this.g += g;
+                this.b += b;
+            }
+
+            /** Turn the node into a leaf holding pixels of its leaf children, @return number of those children */
+            private int fold() {
+                int folded = 0;
+                count = 0;
+                for (Node child : children) {
+                    if (child != null) {
+                        add(child.count, child.r, child.g, child.b);
+                        folded++;
+                    }
+                }
+                children = null;
+                return folded;
+            }
+
+            private void collect(List<Integer> out) {
+                if (children == null) {
+                    if (count > 0) {
+                        out.add(mean(count, r, g, b));
+                    }
+                } else {
+                    for (Node child : children) {
+                        if (child != null) {
+                            child.collect(out);
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package su.dkzde.genki;
+
+/**
+ * Reduces colors counted by a {@link ColorHistogram} to a {@link Palette} of at most 256 entries, pixels are then
+ * turned into indices with {@link Palette#map(int[])}. Usage:
+ * <pre>
+ *     Palette palette = Quantizer.makeMedianCut().palette(argb, 256);
+ *     ImageEncoder encoder = new ImageEncoder(DataEncoder::makeEncoder, lsd, descriptor, visitor);
+ *     palette.visitColorTable(encoder);
+ *     encoder.visitDataStart();
+ *     encoder.visitData(palette.map(argb));
+ *     encoder.visitDataEnd();
+ * </pre>
+ * The descriptor uses {@link Palette#colorTableSizeBits()} of the palette.
+ */
+public interface Quantizer {
+
+    /** @return at most {@code colors} {@code 0xRRGGBB} colors representing opaque pixels of the histogram */
+    int[] colors(ColorHistogram histogram, int colors);
+
+    /** Palette of at most {@code colors} entries, one of them is reserved if the histogram counted transparent pixels. */
+    default Palette palette(ColorHistogram histogram, int colors) {
+        if (colors < 1 || colors > 256) {
+            throw new IllegalArgumentException();
+        }
+        if (histogram.transparent() > 0) {
+            if (colors < 2) {
+                throw new IllegalArgumentException();
+            }
+            int[] opaque = colors(histogram, colors - 1);
+            int[] table = new int[opaque.length + 1];
+            System.arraycopy(opaque, 0, table, 0, opaque.length);
+            return new Palette(table, opaque.length);
+        } else {
+            int[] opaque = colors(histogram, colors);
+            return new Palette(opaque.length > 0 ? opaque : new int[1], -1);
+        }
+    }
+
+    default Palette palette(int[] argb, int colors) {
+        ColorHistogram histogram = new ColorHistogram();
+        histogram.add(argb);
+        return palette(histogram, colors);
+    }
+
+    /** Splits the box of colors with the most pixels times its longest side at the median, until there are enough. */
+    static Quantizer makeMedianCut() {
+        return Quantization.makeMedianCut();
+    }
+
+    /** Folds leaves of the color octree with the fewest pixels into their parents, until there are few enough. */
+    static Quantizer makeOctree() {
+        return Quantization.makeOctree();
+    }
+}
@@ -0,0 +1,114 @@
+package su.dkzde.genki;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/**
+ * Decodes image data row by row, every row is visited as soon as it and all the rows above it are decoded.
+ * Rows of interlaced images are visited in display order, so the first rows of such images become available
+ * only after the last pass starts. Once the visitor asks to stop, remaining data sub-blocks are ignored without
+ * being decoded. Usage is same as for {@link FrameDecoder}:
+ * <pre>
+ *     RowDecoder rows = new RowDecoder(DataDecoder::makeDecoder, visitor);
+ *     ...
+ *     public ProtoImageVisitor visitImage(ImageDescriptor descriptor) {
+ *         return rows.visitImage(descriptor);
+ *     }
+ * </pre>
+ */
+public final class RowDecoder implements ProtoImageVisitor {
+
+    private final RowVisitor backend;
+    private final Supplier<DataDecoder> supplier;
+    private DataDecoder decoder;
+    private ImageDescriptor descriptor;
+
+    /** Indices in the order they are stored, shared between images. */
+    private byte[] buffer = new byte[0];
+    /** Number of indices of the current image, the decoder writes no further than that. */
+    private int size;
+    private int offset;
+    /** Next display row to be visited. */
+    private int y;
+    private boolean stopped;
+
+    public RowDecoder(Supplier<DataDecoder> supplier, RowVisitor visitor) {
+        this.backend = visitor;
+        this.supplier = supplier;
+    }
+
+    /** Prepare the buffer for the image and return this decoder as the visitor for its data. */
+    public ProtoImageVisitor visitImage(ImageDescriptor descriptor) {
+        this.descriptor = descriptor;
+        size = descriptor.imageWidth() * descriptor.imageHeight();
+        if (buffer.length < size) {
+            buffer = new byte[size];
+        }
+        return this;
+    }
+
+    @Override
+    public void visitColorTable(int index, byte r, byte g, byte b) {
+        backend.visitColorTable(index, r, g, b);
+    }
+
+    @Override
+    public void visitDataStart(int lzwCodeSize) {
+        decoder = supplier.get();
+        decoder.initialize(lzwCodeSize);
+        offset = 0;
+        y = 0;
+        stopped = false;
+    }
+
+    @Override
+    public void visitDataBlock(byte[] block) {
+        if (!stopped) {
+            offset += decoder.decode(block, buffer, offset, size);
+            visitRows();
+        }
+    }
+
+    @Override
+    public void visitDataBlock(ByteBuffer block) {
+        if (!stopped) {
+            offset += decoder.decode(block, buffer, offset, size);
+            visitRows();
+        }
+    }
+
+    @Override
+    public void visitEnd() {
+        decoder.dispose();
+        if (!stopped) {
+            if (offset < size) {
+                Arrays.fill(buffer, offset, size, (byte) 0);
+                offset = size;
+            }
+            visitRows();
+        }
+        backend.visitEnd();
+    }
+
+    /** Visit display rows that are completely decoded, stored rows of interlaced images are looked up by position. */
+    private void visitRows() {
+        int width = descriptor.imageWidth();
+        int height = descriptor.imageHeight();
+        if (width == 0) {
+            return;
+        }
+        int decoded = Math.min(height, offset / width);
+        boolean interlaced = descriptor.interlacingUsed();
+        while (y < height) {
+            int j = interlaced ? Interlace.index(y, height) : y;
+            if (j >= decoded) {
+                return;
+            }
+            if (!backend.visitRow(y++, buffer, j * width)) {
+                stopped = true;
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package su.dkzde.genki;
+
+public interface RowVisitor {
+    void visitColorTable(int index, byte r, byte g, byte b);
+    /**
+     * @param y display row, rows are visited top to bottom
+     * @param indices the row occupies {@code imageWidth} entries starting at {@code offset};
+     *                the array is reused and must not be retained
+     * @return whether decoding should continue, returning {@code false} skips the rest of the image data
+     */
+    boolean visitRow(int y, byte[] indices, int offset);
+    void visitEnd();
+}
@@ -0,0 +1,22 @@
+package su.dkzde.genki;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/** Helpers for tasks run on executors passed by callers. */
+final class Tasks {
+    private Tasks() {}
+
+    /** Wait for the task, runtime exceptions it failed with are rethrown as they are, not wrapped. */
+    static <T> T join(CompletableFuture<T> task) {
+        try {
+            return task.join();
+        } catch (CompletionException exception) {
+            if (exception.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            } else {
+                throw exception;
+            }
+        }
+    }
+}
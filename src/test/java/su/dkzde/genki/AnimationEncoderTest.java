@@ -0,0 +1,135 @@
+package su.dkzde.genki;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class AnimationEncoderTest {
+
+    /** Decoded frame as {@code 0xRRGGBB} colors, transparent pixels are {@code -1}. */
+    record Rendered(boolean localColorTableUsed, int[] rgb) {}
+
+    static List<Rendered> render(byte[] gif) throws IOException {
+        List<Rendered> frames = new ArrayList<>();
+        int[] global = new int[256];
+        int[] local = new int[256];
+        int[] transparent = {-1};
+        FrameDecoder decoder = new FrameDecoder(DataDecoder::makeDecoder, new FrameVisitor() {
+            @Override public void visitColorTable(int index, byte r, byte g, byte b) {
+                local[index] = Byte.toUnsignedInt(r) << 16 | Byte.toUnsignedInt(g) << 8 | Byte.toUnsignedInt(b);
+            }
+            @Override public void visitFrame(ImageDescriptor descriptor, byte[] indices) {
+                int[] table = descriptor.localColorTableUsed() ? local : global;
+                int[] rgb = new int[descriptor.imageWidth() * descriptor.imageHeight()];
+                for (int j = 0; j < rgb.length; j++) {
+                    int index = Byte.toUnsignedInt(indices[j]);
+                    rgb[j] = index == transparent[0] ? -1 : table[index];
+                }
+                frames.add(new Rendered(descriptor.localColorTableUsed(), rgb));
+            }
+        });
+        new ProtoDecoder(ByteStream.from(gif)).accept(new ProtoVisitor() {
+            @Override public void visitHeader(Version version) {}
+            @Override public ProtoApplicationVisitor visitApplication(ApplicationDescriptor descriptor) {
+                return null;
+            }
+            @Override public void visitLogicalScreenDescriptor(LogicalScreenDescriptor descriptor) {}
+            @Override public void visitGraphicsControlExtension(GraphicsControlExtension extension) {
+                transparent[0] = extension.transparencyFlag() ? extension.transparencyIndex() : -1;
+            }
+            @Override public void visitGlobalColorTable(int index, byte r, byte g, byte b) {
+                global[index] = Byte.toUnsignedInt(r) << 16 | Byte.toUnsignedInt(g) << 8 | Byte.toUnsignedInt(b);
+            }
+            @Override public ProtoImageVisitor visitImage(ImageDescriptor descriptor) {
+                return decoder.visitImage(descriptor);
+            }
+            @Override public void visitEnd() {}
+        });
+        return frames;
+    }
+
+    /** Gradient of the photo sample with channels rotated, so it has none of its colors. */
+    static int[] rotated(int[] argb) {
+        int[] out = new int[argb.length];
+        for (int j = 0; j < argb.length; j++) {
+            int r = argb[j] >> 16 & 0xff;
+            out[j] = 0xff000000 | (argb[j] & 0xffff) << 8 | 255 - r;
+        }
+        return out;
+    }
+
+    @Test void reusePalettes() throws IOException {
+        int width = 96;
+        int height = 64;
+        List<int[]> frames = new ArrayList<>();
+        for (int j = 0; j < 3; j++) {
+            frames.add(QuantizerTest.photo(width, height, j));
+        }
+        for (int j = 3; j < 6; j++) {
+            frames.add(rotated(QuantizerTest.photo(width, height, j)));
+        }
+        Quantizer median = Quantizer.makeMedianCut();
+        int[] quantized = {0};
+        Quantizer counting = (histogram, colors) -> {
+            quantized[0]++;
+            return median.colors(histogram, colors);
+        };
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        AnimationEncoder animation = new AnimationEncoder(DataEncoder::makeEncoder, counting,
+                AnimationEncoder.Options.builder().setLoopCount(0).build(),
+                width, height, new ProtoEncoder(ByteSink.from(bos)));
+        for (int[] frame : frames) {
+            animation.visitFrame(GraphicsControlExtension.builder().setDelayTime(5).build(), frame);
+        }
+        animation.visitEnd();
+        byte[] gif = bos.toByteArray();
+
+        // The global palette and the palette of the fourth frame:
+        Assertions.assertEquals(2, quantized[0]);
+        Assertions.assertEquals(new ProtoSummary(Version.gif89a, width, height, 256, 6, 30, 0, 256, true),
+                new ProtoDecoder(ByteStream.from(gif)).probe());
+        List<Rendered> rendered = render(gif);
+        for (int j = 0; j < frames.size(); j++) {
+            Assertions.assertEquals(j >= 3, rendered.get(j).localColorTableUsed());
+            double error = QuantizerTest.meanError(frames.get(j), rendered.get(j).rgb());
+            Assertions.assertTrue(error < 6, "mean error " + error);
+        }
+    }
+
+    @Test void loopCountRange() {
+        Assertions.assertEquals(-1, AnimationEncoder.Options.builder().setLoopCount(-1).build().loopCount());
+        Assertions.assertEquals(0xffff, AnimationEncoder.Options.builder().setLoopCount(0xffff).build().loopCount());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> AnimationEncoder.Options.builder().setLoopCount(-2).build());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> AnimationEncoder.Options.builder().setLoopCount(0x10000).build());
+    }
+
+    @Test void transparentPixels() throws IOException {
+        int width = 40;
+        int height = 30;
+        int[] opaque = QuantizerTest.photo(width, height, 7);
+        int[] holes = opaque.clone();
+        for (int j = 0; j < holes.length; j += 5) {
+            holes[j] = 0;
+        }
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        AnimationEncoder animation = new AnimationEncoder(DataEncoder::makeEncoder, Quantizer.makeOctree(),
+                AnimationEncoder.Options.builder().setColors(64).build(),
+                width, height, new ProtoEncoder(ByteSink.from(bos)));
+        animation.visitFrame(null, opaque);
+        animation.visitFrame(null, holes);
+        animation.visitEnd();
+
+        List<Rendered> rendered = render(bos.toByteArray());
+        // The global palette has no transparent entry, so the second frame has a local one:
+        Assertions.assertFalse(rendered.get(0).localColorTableUsed());
+        Assertions.assertTrue(rendered.get(1).localColorTableUsed());
+        for (int j = 0; j < holes.length; j++) {
+            Assertions.assertEquals(j % 5 == 0, rendered.get(1).rgb()[j] == -1);
+        }
+    }
+}
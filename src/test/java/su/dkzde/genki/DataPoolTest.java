@@ -0,0 +1,90 @@
+package su.dkzde.genki;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class DataPoolTest {
+
+    static long allocatedBytes() {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    static int decode(DataDecoderPool pool, ByteBuffer[] blocks, byte[] canvas) {
+        DataDecoder decoder = pool.get();
+        decoder.initialize(8);
+        int offset = 0;
+        for (ByteBuffer block : blocks) {
+            offset += decoder.decode(block, canvas, offset);
+        }
+        decoder.dispose();
+        return offset;
+    }
+
+    @Test void reuseDisposed() {
+        DataDecoderPool decoders = new DataDecoderPool(DataDecoder::makeDecoder, 2);
+        DataDecoder decoder = decoders.get();
+        decoder.dispose();
+        decoder.dispose();
+        Assertions.assertSame(decoder, decoders.get());
+        Assertions.assertNotSame(decoder, decoders.get());
+
+        DataEncoderPool encoders = new DataEncoderPool(DataEncoder::makeEncoder, 2);
+        DataEncoder encoder = encoders.get();
+        encoder.dispose();
+        Assertions.assertSame(encoder, encoders.get());
+    }
+
+    @Test void steadyStateDecodingAllocatesNothing() {
+        int[] indices = LZWTest.runs(300 * 200, 8, 3);
+        List<byte[]> encoded = LZWTest.encode(8, indices);
+        for (DataDecoderPool pool : List.of(
+                new DataDecoderPool(DataDecoder::makeDecoder, 1),
+                new DataDecoderPool(DataDecoder::makeDirectDecoder, 1))) {
+            ByteBuffer[] blocks = new ByteBuffer[encoded.size()];
+            for (int j = 0; j < blocks.length; j++) {
+                blocks[j] = ByteBuffer.wrap(encoded.get(j)).asReadOnlyBuffer();
+            }
+            byte[] canvas = new byte[indices.length];
+            for (int j = 0; j < 100; j++) {
+                decode(pool, blocks, canvas);
+            }
+            long baseline = allocatedBytes();
+            baseline = allocatedBytes() - baseline;
+            long before = allocatedBytes();
+            for (int j = 0; j < 20; j++) {
+                Assertions.assertEquals(indices.length, decode(pool, blocks, canvas));
+            }
+            long allocated = allocatedBytes() - before - baseline;
+            Assertions.assertEquals(0, allocated);
+            Assertions.assertArrayEquals(Indices.narrow(indices), canvas);
+        }
+    }
+
+    @Test void concurrentUse() throws Exception {
+        int[] indices = LZWTest.noise(100 * 100, 8, 5);
+        List<byte[]> blocks = LZWTest.encode(8, indices);
+        DataDecoderPool decoders = new DataDecoderPool(DataDecoder::makeDirectDecoder, 4);
+        DataEncoderPool encoders = new DataEncoderPool(DataEncoder::makeEncoder, 4);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int task = 0; task < 64; task++) {
+            tasks.add(executor.submit(() -> {
+                Assertions.assertArrayEquals(indices, LZWTest.decode(decoders.get(), 8, blocks));
+                Assertions.assertArrayEquals(indices, LZWTest.decode(decoders.get(), 8, LZWTest.encode(encoders.get(), 8, indices)));
+            }));
+        }
+        for (Future<?> task : tasks) {
+            task.get();
+        }
+        executor.shutdown();
+    }
+}
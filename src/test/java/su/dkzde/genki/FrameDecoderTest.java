@@ -0,0 +1,166 @@
+package su.dkzde.genki;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class FrameDecoderTest {
+
+    static byte[] encode(int width, int height, boolean interlaced, byte[]... frames) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ProtoEncoder encoder = new ProtoEncoder(ByteSink.from(bos));
+        encoder.visitHeader(Version.gif89a);
+        LogicalScreenDescriptor lsd = LogicalScreenDescriptor.builder()
+                .setLogicalScreenWidth(width)
+                .setLogicalScreenHeight(height)
+                .setGlobalColorTableUsed(true)
+                .setColorTableSizeBits((byte) 3)
+                .build();
+        encoder.visitLogicalScreenDescriptor(lsd);
+        for (int index = 0; index < lsd.colorTableSize(); index++) {
+            encoder.visitGlobalColorTable(index, (byte) index, (byte) index, (byte) index);
+        }
+        ImageDescriptor id = ImageDescriptor.builder()
+                .setImageWidth(width)
+                .setImageHeight(height)
+                .setInterlacingUsed(interlaced)
+                .build();
+        for (byte[] display : frames) {
+            byte[] stored = display;
+            if (interlaced) {
+                stored = new byte[display.length];
+                for (int j = 0; j < height; j++) {
+                    System.arraycopy(display, Interlace.row(j, height) * width, stored, j * width, width);
+                }
+            }
+            if (frames.length > 1) {
+                encoder.visitGraphicsControlExtension(GraphicsControlExtension.builder()
+                        .setDelayTime(10)
+                        .build());
+            }
+            ImageEncoder image = new ImageEncoder(DataEncoder::makeEncoder, lsd, id, encoder.visitImage(id));
+            image.visitDataStart();
+            image.visitData(stored);
+            image.visitDataEnd();
+        }
+        encoder.visitEnd();
+        return bos.toByteArray();
+    }
+
+    static byte[] decode(byte[] gif) throws IOException {
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        FrameDecoder decoder = new FrameDecoder(DataDecoder::makeDecoder, new FrameVisitor() {
+            @Override public void visitColorTable(int index, byte r, byte g, byte b) {}
+            @Override public void visitFrame(ImageDescriptor descriptor, byte[] indices) {
+                frames.write(indices, 0, descriptor.imageWidth() * descriptor.imageHeight());
+            }
+        });
+        new ProtoDecoder(ByteStream.from(gif)).accept(new ProtoVisitorDecorator(new ProtoEncoder(ByteSink.from(new ByteArrayOutputStream()))) {
+            @Override public ProtoImageVisitor visitImage(ImageDescriptor descriptor) {
+                return decoder.visitImage(descriptor);
+            }
+        });
+        return frames.toByteArray();
+    }
+
+    static byte[] noise(int size, long seed) {
+        Random random = new Random(seed);
+        byte[] indices = new byte[size];
+        for (int j = 0; j < size; j++) {
+            indices[j] = (byte) random.nextInt(16);
+        }
+        return indices;
+    }
+
+    @Test void interlacedRowOrder() {
+        for (int height = 1; height < 40; height++) {
+            boolean[] seen = new boolean[height];
+            for (int j = 0; j < height; j++) {
+                int row = Interlace.row(j, height);
+                Assertions.assertFalse(seen[row]);
+                Assertions.assertEquals(j, Interlace.index(row, height));
+                seen[row] = true;
+            }
+        }
+    }
+
+    @Test void progressiveFrame() throws IOException {
+        byte[] display = noise(37 * 23, 1);
+        Assertions.assertArrayEquals(display, decode(encode(37, 23, false, display)));
+    }
+
+    @Test void interlacedFrame() throws IOException {
+        for (int height = 1; height < 20; height++) {
+            byte[] display = noise(11 * height, height);
+            Assertions.assertArrayEquals(display, decode(encode(11, height, true, display)));
+        }
+    }
+
+    @Test void truncatedFrame() throws IOException {
+        byte[] display = noise(16 * 16, 2);
+        byte[] gif = encode(16, 16, false, Arrays.copyOf(display, 100));
+        byte[] frame = decode(gif);
+        Assertions.assertArrayEquals(Arrays.copyOf(display, 100), Arrays.copyOf(frame, 100));
+        Assertions.assertArrayEquals(new byte[156], Arrays.copyOfRange(frame, 100, 256));
+    }
+
+    @Test void overrunFrame() {
+        // 400 indices are too many for a 10x10 image, whatever the size of the canvas left by previous frames:
+        List<byte[]> blocks = LZWTest.encode(8, LZWTest.noise(20 * 20, 8, 3));
+        FrameDecoder decoder = new FrameDecoder(DataDecoder::makeDecoder, new FrameVisitor() {
+            @Override public void visitColorTable(int index, byte r, byte g, byte b) {}
+            @Override public void visitFrame(ImageDescriptor descriptor, byte[] indices) {}
+        });
+        for (int size : new int[] {10, 20, 10}) {
+            ProtoImageVisitor image = decoder.visitImage(ImageDescriptor.builder()
+                    .setImageWidth(size)
+                    .setImageHeight(size)
+                    .build());
+            image.visitDataStart(8);
+            Runnable data = () -> blocks.forEach(image::visitDataBlock);
+            if (size == 10) {
+                Assertions.assertThrows(DataChannelException.class, data::run);
+            } else {
+                data.run();
+                image.visitEnd();
+            }
+        }
+    }
+
+    @Test void parallelFrames() throws Exception {
+        for (boolean interlaced : new boolean[] {false, true}) {
+            byte[][] frames = new byte[9][];
+            for (int j = 0; j < frames.length; j++) {
+                frames[j] = noise(120 * 80, j);
+            }
+            byte[] gif = encode(120, 80, interlaced, frames);
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            List<byte[]> decoded = new ArrayList<>();
+            ParallelFrameDecoder decoder = new ParallelFrameDecoder(DataDecoder::makeDirectDecoder, executor, 3, new FrameVisitor() {
+                @Override public void visitColorTable(int index, byte r, byte g, byte b) {}
+                @Override public void visitFrame(ImageDescriptor descriptor, byte[] indices) {
+                    decoded.add(indices);
+                }
+            });
+            new ProtoDecoder(ByteStream.from(gif)).accept(new ProtoVisitorDecorator(new ProtoEncoder(ByteSink.from(new ByteArrayOutputStream()))) {
+                @Override public ProtoImageVisitor visitImage(ImageDescriptor descriptor) {
+                    return decoder.visitImage(descriptor);
+                }
+            });
+            decoder.visitEnd();
+            executor.shutdown();
+            Assertions.assertEquals(frames.length, decoded.size());
+            for (int j = 0; j < frames.length; j++) {
+                Assertions.assertArrayEquals(frames[j], decoded.get(j));
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package su.dkzde.genki;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+public class FrameIndexTest {
+
+    static byte[] decodeFrame(ProtoDecoder decoder, FrameIndex index, int frame) throws IOException {
+        ByteArrayOutputStream indices = new ByteArrayOutputStream();
+        FrameDecoder frameDecoder = new FrameDecoder(DataDecoder::makeDecoder, new FrameVisitor() {
+            @Override public void visitColorTable(int index, byte r, byte g, byte b) {}
+            @Override public void visitFrame(ImageDescriptor descriptor, byte[] frame) {
+                indices.write(frame, 0, descriptor.imageWidth() * descriptor.imageHeight());
+            }
+        });
+        decoder.accept(index, frame, new ProtoVisitorDecorator(new ProtoEncoder(ByteSink.from(new ByteArrayOutputStream()))) {
+            @Override public void visitGraphicsControlExtension(GraphicsControlExtension extension) {
+                Assertions.assertEquals(10, extension.delayTime());
+            }
+            @Override public ProtoImageVisitor visitImage(ImageDescriptor descriptor) {
+                return frameDecoder.visitImage(descriptor);
+            }
+        });
+        return indices.toByteArray();
+    }
+
+    @Test void frameOffsets() throws IOException {
+        byte[] gif = FrameDecoderTest.encode(32, 32, false,
+                FrameDecoderTest.noise(32 * 32, 0),
+                FrameDecoderTest.noise(32 * 32, 1));
+        FrameIndex index = FrameIndex.build(new ProtoDecoder(ByteStream.from(gif)));
+        Assertions.assertEquals(2, index.size());
+        for (int frame = 0; frame < index.size(); frame++) {
+            FrameIndex.Frame entry = index.frame(frame);
+            Assertions.assertEquals(0x21, Byte.toUnsignedInt(gif[(int) entry.controlOffset()]));
+            Assertions.assertEquals(0xf9, Byte.toUnsignedInt(gif[(int) entry.controlOffset() + 1]));
+            Assertions.assertEquals(0x2c, Byte.toUnsignedInt(gif[(int) entry.descriptorOffset()]));
+            Assertions.assertEquals(13, entry.colorTableOffset());
+            Assertions.assertEquals(16, entry.colorTableSize());
+        }
+    }
+
+    @Test void seekToFrame(@TempDir Path directory) throws IOException {
+        byte[][] frames = new byte[12][];
+        for (int j = 0; j < frames.length; j++) {
+            frames[j] = FrameDecoderTest.noise(40 * 30, j);
+        }
+        byte[] gif = FrameDecoderTest.encode(40, 30, false, frames);
+        Path file = Files.write(directory.resolve("frames.gif"), gif);
+        Path sidecar = directory.resolve("frames.gif.idx");
+        try (ProtoDecoder decoder = new ProtoDecoder(ByteStream.from(file))) {
+            FrameIndex.build(decoder).save(sidecar);
+        }
+        FrameIndex index = FrameIndex.load(sidecar);
+        Assertions.assertEquals(frames.length, index.size());
+        List<ByteStream> streams = List.of(
+                ByteStream.from(gif),
+                ByteStream.from(file),
+                ByteStream.from(FileChannel.open(file), ByteBuffer.allocate(300)));
+        for (ByteStream stream : streams) {
+            try (ProtoDecoder decoder = new ProtoDecoder(stream)) {
+                for (int frame : new int[] {7, 2, 11, 0, 7}) {
+                    Assertions.assertArrayEquals(frames[frame], decodeFrame(decoder, index, frame));
+                }
+            }
+        }
+    }
+
+    @Test void reuseDecoder(@TempDir Path directory) throws IOException {
+        byte[][] frames = new byte[3][];
+        for (int j = 0; j < frames.length; j++) {
+            frames[j] = FrameDecoderTest.noise(40 * 30, j);
+        }
+        byte[] gif = FrameDecoderTest.encode(40, 30, false, frames);
+        Path file = Files.write(directory.resolve("frames.gif"), gif);
+        List<ByteStream> streams = List.of(
+                ByteStream.from(gif),
+                ByteStream.from(file),
+                ByteStream.from(FileChannel.open(file), ByteBuffer.allocate(300)));
+        for (ByteStream stream : streams) {
+            try (ProtoDecoder decoder = new ProtoDecoder(stream)) {
+                Assertions.assertEquals(frames.length, decoder.probe().frames());
+                FrameIndex index = FrameIndex.build(decoder);
+                Assertions.assertEquals(frames.length, index.size());
+                // Full passes read the stream from the start, whatever was read before:
+                for (int pass = 0; pass < 2; pass++) {
+                    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                    decoder.accept(new ProtoVisitorDecorator(new ProtoEncoder(ByteSink.from(bos))) {});
+                    Assertions.assertArrayEquals(gif, bos.toByteArray());
+                }
+                Assertions.assertArrayEquals(frames[1], decodeFrame(decoder, index, 1));
+            }
+        }
+    }
+
+    @Test void channelAtOffset(@TempDir Path directory) throws IOException {
+        byte[][] frames = new byte[4][];
+        for (int j = 0; j < frames.length; j++) {
+            frames[j] = FrameDecoderTest.noise(40 * 30, j);
+        }
+        byte[] gif = FrameDecoderTest.encode(40, 30, false, frames);
+        byte[] padded = new byte[100 + gif.length];
+        System.arraycopy(gif, 0, padded, 100, gif.length);
+        Path file = Files.write(directory.resolve("padded.gif"), padded);
+        FrameIndex expected = FrameIndex.build(new ProtoDecoder(ByteStream.from(gif)));
+        // Offsets are relative to the position of the channel the stream starts at, whichever backend reads it:
+        for (boolean mapped : new boolean[] {false, true}) {
+            try (FileChannel channel = FileChannel.open(file)) {
+                channel.position(100);
+                ByteStream stream = mapped
+                        ? ByteStream.from(channel)
+                        : ByteStream.from(channel, ByteBuffer.allocate(300));
+                Assertions.assertTrue(stream.seekable());
+                ProtoDecoder decoder = new ProtoDecoder(stream);
+                FrameIndex index = FrameIndex.build(decoder);
+                for (int frame = 0; frame < frames.length; frame++) {
+                    Assertions.assertEquals(expected.frame(frame), index.frame(frame));
+                }
+                for (int frame : new int[] {3, 0, 2}) {
+                    Assertions.assertArrayEquals(frames[frame], decodeFrame(decoder, index, frame));
+                }
+            }
+        }
+        Assertions.assertFalse(ByteStream.from(new ByteArrayInputStream(gif)).seekable());
+        Assertions.assertThrows(IOException.class, () -> ByteStream.from(new ByteArrayInputStream(gif)).seek(0));
+    }
+}
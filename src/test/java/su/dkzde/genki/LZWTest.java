@@ -0,0 +1,204 @@
+package su.dkzde.genki;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class LZWTest {
+
+    static List<byte[]> encode(int mcs, int[] indices) {
+        return encode(LZW.makeEncoder(), mcs, indices);
+    }
+
+    static List<byte[]> encode(DataEncoder encoder, int mcs, int[] indices) {
+        List<byte[]> blocks = new ArrayList<>();
+        encoder.initialize(mcs);
+        encoder.accept(indices);
+        for (byte[] db = encoder.encode(false); db != null; db = encoder.encode(false)) {
+            blocks.add(db.clone());
+        }
+        for (byte[] db = encoder.encode(true); db != null; db = encoder.encode(true)) {
+            blocks.add(db.clone());
+        }
+        encoder.dispose();
+        return blocks;
+    }
+
+    static int[] decode(int mcs, List<byte[]> blocks) {
+        int[] indices = decode(LZW.makeDecoder(), mcs, blocks);
+        Assertions.assertArrayEquals(indices, decode(LZW.makeDirectDecoder(1 << 8), mcs, blocks));
+        return indices;
+    }
+
+    static int[] decode(DataDecoder decoder, int mcs, List<byte[]> blocks) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        decoder.initialize(mcs);
+        for (byte[] block : blocks) {
+            bos.writeBytes(decoder.decodeBytes(block));
+        }
+        decoder.dispose();
+        byte[] bytes = bos.toByteArray();
+        int[] indices = new int[bytes.length];
+        for (int j = 0; j < bytes.length; j++) {
+            indices[j] = Byte.toUnsignedInt(bytes[j]);
+        }
+        return indices;
+    }
+
+    static int[] noise(int size, int mcs, long seed) {
+        Random random = new Random(seed);
+        int[] indices = new int[size];
+        for (int j = 0; j < size; j++) {
+            indices[j] = random.nextInt(1 << mcs);
+        }
+        return indices;
+    }
+
+    static int[] runs(int size, int mcs, long seed) {
+        Random random = new Random(seed);
+        int[] indices = new int[size];
+        for (int j = 1; j < size; j++) {
+            indices[j] = random.nextInt(8) == 0 ? random.nextInt(1 << mcs) : indices[j - 1];
+        }
+        return indices;
+    }
+
+    @Test void roundTripNoise() {
+        for (int mcs = 2; mcs <= 8; mcs++) {
+            int[] indices = noise(500 * 500, mcs, mcs);
+            Assertions.assertArrayEquals(indices, decode(mcs, encode(mcs, indices)));
+        }
+    }
+
+    @Test void roundTripRuns() {
+        for (int mcs = 2; mcs <= 8; mcs++) {
+            int[] indices = runs(500 * 500, mcs, mcs);
+            Assertions.assertArrayEquals(indices, decode(mcs, encode(mcs, indices)));
+        }
+    }
+
+    @Test void roundTripFlat() {
+        int[] indices = new int[500 * 500];
+        Assertions.assertArrayEquals(indices, decode(2, encode(2, indices)));
+    }
+
+    @Test void roundTripShort() {
+        for (int size = 1; size < 64; size++) {
+            int[] indices = noise(size, 3, size);
+            Assertions.assertArrayEquals(indices, decode(3, encode(3, indices)));
+        }
+    }
+
+    @Test void roundTripSmallBlocks() {
+        int[] indices = runs(100 * 100, 8, 0);
+        List<byte[]> blocks = new ArrayList<>();
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        for (byte[] block : encode(8, indices)) {
+            bos.writeBytes(block);
+        }
+        byte[] stream = bos.toByteArray();
+        for (int j = 0, bs = 1; j < stream.length; j += bs, bs = 1 + bs % 7) {
+            blocks.add(Arrays.copyOfRange(stream, j, Math.min(stream.length, j + bs)));
+        }
+        Assertions.assertArrayEquals(indices, decode(8, blocks));
+    }
+
+    @Test void intOnlyCoders() {
+        int[] indices = runs(100 * 100, 8, 2);
+        DataEncoder encoder = new DataEncoder() {
+            final DataEncoder backend = LZW.makeEncoder();
+            @Override public void initialize(int mcs) {
+                backend.initialize(mcs);
+            }
+            @Override public void accept(int[] chunk) {
+                backend.accept(chunk);
+            }
+            @Override public byte[] encode(boolean eof) {
+                return backend.encode(eof);
+            }
+            @Override public void dispose() {
+                backend.dispose();
+            }
+        };
+        DataDecoder decoder = new DataDecoder() {
+            final DataDecoder backend = LZW.makeDecoder();
+            @Override public void initialize(int mcs) {
+                backend.initialize(mcs);
+            }
+            @Override public int[] decode(byte[] block) {
+                return backend.decode(block);
+            }
+            @Override public void dispose() {
+                backend.dispose();
+            }
+        };
+        // Byte-oriented methods fall back to the int ones:
+        List<byte[]> blocks = new ArrayList<>();
+        encoder.initialize(8);
+        encoder.accept(Indices.narrow(indices));
+        for (byte[] db = encoder.encode(true); db != null; db = encoder.encode(true)) {
+            blocks.add(db.clone());
+        }
+        Assertions.assertArrayEquals(indices, decode(decoder, 8, blocks));
+        byte[] canvas = new byte[indices.length];
+        decoder.initialize(8);
+        int offset = 0;
+        for (byte[] block : blocks) {
+            offset += decoder.decode(block, canvas, offset);
+        }
+        Assertions.assertArrayEquals(Indices.narrow(indices), canvas);
+    }
+
+    @Test void decodeIntoCanvas() {
+        int[] indices = runs(300 * 200, 8, 1);
+        byte[] expected = Indices.narrow(indices);
+        List<byte[]> blocks = encode(8, indices);
+        for (DataDecoder decoder : List.of(LZW.makeDecoder(), LZW.makeDirectDecoder())) {
+            byte[] canvas = new byte[indices.length];
+            decoder.initialize(8);
+            int offset = 0;
+            for (byte[] block : blocks) {
+                offset += decoder.decode(block, canvas, offset);
+            }
+            Assertions.assertEquals(indices.length, offset);
+            Assertions.assertArrayEquals(expected, canvas);
+
+            // Data producing more indices than the canvas holds is rejected:
+            byte[] clipped = new byte[indices.length / 2];
+            decoder.initialize(8);
+            Assertions.assertThrows(DataChannelException.class, () -> {
+                int written = 0;
+                for (byte[] block : blocks) {
+                    written += decoder.decode(block, clipped, written);
+                }
+            });
+        }
+    }
+
+    @Test void roundTripSegmented() {
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        for (int mcs = 2; mcs <= 8; mcs++) {
+            // Inputs just around one and two segments, and a segment larger than the input:
+            for (int segmentSize : new int[] {1, 7, 5000, 1 << 20}) {
+                int size = Math.min(segmentSize, 5000);
+                for (int length : new int[] {0, 1, size, size + 1, 2 * size + 1}) {
+                    for (int[] indices : List.of(noise(length, mcs, length), runs(length, mcs, length))) {
+                        List<byte[]> blocks = encode(LZW.makeSegmentedEncoder(executor, segmentSize), mcs, indices);
+                        for (int j = 0; j + 1 < blocks.size(); j++) {
+                            Assertions.assertEquals(255, blocks.get(j).length);
+                        }
+                        Assertions.assertArrayEquals(indices, decode(mcs, blocks));
+                    }
+                }
+            }
+        }
+        executor.shutdown();
+    }
+}
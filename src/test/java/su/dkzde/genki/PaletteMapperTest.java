@@ -0,0 +1,102 @@
+package su.dkzde.genki;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class PaletteMapperTest {
+
+    static Palette random(Random random, int size, int transparentIndex) {
+        int[] colors = new int[size];
+        for (int index = 0; index < size; index++) {
+            colors[index] = random.nextInt(1 << 24);
+        }
+        return new Palette(colors, transparentIndex);
+    }
+
+    @Test void nearestMatchesExhaustiveSearch() {
+        Random random = new Random(1);
+        for (int size : new int[] {1, 2, 7, 64, 255, 256}) {
+            for (int transparentIndex : new int[] {-1, size - 1}) {
+                if (size == 1 && transparentIndex == 0) {
+                    continue;
+                }
+                Palette palette = random(random, size, transparentIndex);
+                PaletteMapper mapper = new PaletteMapper(palette);
+                for (int j = 0; j < 20000; j++) {
+                    int rgb = random.nextInt(1 << 24);
+                    Assertions.assertEquals(palette.nearest(rgb), mapper.nearest(rgb));
+                }
+                for (int color : palette.colors()) {
+                    Assertions.assertEquals(palette.nearest(color), mapper.nearest(color));
+                }
+            }
+        }
+        // Ties are resolved to the lowest index:
+        PaletteMapper duplicates = new PaletteMapper(new Palette(new int[] {0x102030, 0x405060, 0x102030}, -1));
+        Assertions.assertEquals(0, duplicates.nearest(0x102030));
+    }
+
+    @Test void sharedMapper() {
+        Palette palette = random(new Random(4), 32, -1);
+        Assertions.assertSame(palette.mapper(), palette.mapper());
+        Assertions.assertNotSame(palette.mapper(), new Palette(palette.colors().clone(), -1).mapper());
+        int[] argb = QuantizerTest.photo(32, 32, 4);
+        Assertions.assertArrayEquals(new PaletteMapper(palette).map(argb), palette.map(argb));
+        // Colors are copied, edits of arrays passed in or handed out leave the palette and its mapper intact:
+        int[] colors = {0x000000, 0xffffff};
+        Palette blackWhite = new Palette(colors, -1);
+        Assertions.assertEquals(0, blackWhite.mapper().nearest(0x101010));
+        colors[0] = 0xffffff;
+        blackWhite.colors()[0] = 0xffffff;
+        Assertions.assertEquals(0x000000, blackWhite.colors()[0]);
+        Assertions.assertEquals(0, blackWhite.map(new int[] {0xff101010})[0]);
+        Assertions.assertEquals(new Palette(new int[] {0x000000, 0xffffff}, -1), blackWhite);
+    }
+
+    @Test void colorTableEntries() {
+        Palette palette = random(new Random(2), 128, 5);
+        PaletteMapper fromTable = new PaletteMapper(palette.colorTable(), 5);
+        int[] argb = QuantizerTest.photo(64, 64, 2);
+        argb[17] = 0;
+        byte[] indices = fromTable.map(argb);
+        for (int j = 0; j < argb.length; j++) {
+            int expected = j == 17 ? 5 : palette.nearest(argb[j] & 0xffffff);
+            Assertions.assertEquals(expected, Byte.toUnsignedInt(indices[j]));
+        }
+    }
+
+    @Test void parallelRows() {
+        int width = 200;
+        int height = 150;
+        int[] argb = QuantizerTest.photo(width, height, 3);
+        Palette palette = Quantizer.makeMedianCut().palette(argb, 256);
+        PaletteMapper mapper = new PaletteMapper(palette);
+        byte[] expected = mapper.map(argb);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int bands : new int[] {1, 3, 8, 1000}) {
+            byte[] indices = new byte[argb.length];
+            mapper.map(argb, indices, width, executor, bands);
+            Assertions.assertArrayEquals(expected, indices);
+
+            ByteArrayOutputStream collected = new ByteArrayOutputStream();
+            mapper.visitData(argb, width, new ImageVisitor() {
+                @Override public void visitColorTable(int index, byte r, byte g, byte b) {}
+                @Override public void visitDataStart() {}
+                @Override public void visitData(int[] block) {
+                    collected.writeBytes(Indices.narrow(block));
+                }
+                @Override public void visitData(byte[] block) {
+                    collected.writeBytes(block);
+                }
+                @Override public void visitDataEnd() {}
+            }, executor, bands);
+            Assertions.assertArrayEquals(expected, collected.toByteArray());
+        }
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,67 @@
+package su.dkzde.genki;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class ParallelFrameEncoderTest {
+
+    @Test void orderedOutput() {
+        byte[][] frames = new byte[9][];
+        for (int j = 0; j < frames.length; j++) {
+            // Noise takes much longer to encode than a flat frame, so frames complete out of order:
+            frames[j] = j % 2 == 0 ? FrameDecoderTest.noise(150 * 100, j) : new byte[150 * 100];
+        }
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ProtoEncoder encoder = new ProtoEncoder(ByteSink.from(bos));
+        encoder.visitHeader(Version.gif89a);
+        LogicalScreenDescriptor lsd = LogicalScreenDescriptor.builder()
+                .setLogicalScreenWidth(150)
+                .setLogicalScreenHeight(100)
+                .setGlobalColorTableUsed(true)
+                .setColorTableSizeBits((byte) 3)
+                .build();
+        encoder.visitLogicalScreenDescriptor(lsd);
+        for (int index = 0; index < lsd.colorTableSize(); index++) {
+            encoder.visitGlobalColorTable(index, (byte) index, (byte) index, (byte) index);
+        }
+        ImageDescriptor id = ImageDescriptor.builder()
+                .setImageWidth(150)
+                .setImageHeight(100)
+                .build();
+        GraphicsControlExtension extension = GraphicsControlExtension.builder()
+                .setDelayTime(10)
+                .build();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        ParallelFrameEncoder parallel = new ParallelFrameEncoder(DataEncoder::makeEncoder, lsd, executor, 3, encoder);
+        for (byte[] frame : frames) {
+            parallel.visitFrame(extension, id, null, frame);
+        }
+        parallel.visitEnd();
+        encoder.visitEnd();
+        executor.shutdown();
+        Assertions.assertArrayEquals(FrameDecoderTest.encode(150, 100, false, frames), bos.toByteArray());
+    }
+
+    @Test void localColorTableRequired() {
+        LogicalScreenDescriptor lsd = LogicalScreenDescriptor.builder()
+                .setLogicalScreenWidth(4)
+                .setLogicalScreenHeight(4)
+                .build();
+        ImageDescriptor id = ImageDescriptor.builder()
+                .setImageWidth(4)
+                .setImageHeight(4)
+                .setLocalColorTableUsed(true)
+                .setColorTableSizeBits((byte) 1)
+                .build();
+        ParallelFrameEncoder parallel = new ParallelFrameEncoder(DataEncoder::makeEncoder, lsd, Runnable::run, 1,
+                new ProtoEncoder(ByteSink.from(new ByteArrayOutputStream())));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> parallel.visitFrame(null, id, null, new byte[16]));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> parallel.visitFrame(null, id, new byte[6], new byte[16]));
+        parallel.visitFrame(null, id, new byte[12], new byte[16]);
+        parallel.visitEnd();
+    }
+}
@@ -2,9 +2,21 @@ package su.dkzde.genki;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
 
 public class ProtoDecoderTest {
 
@@ -134,4 +146,364 @@ public class ProtoDecoderTest {
 
         Assertions.assertArrayEquals(input, bos.toByteArray());
     }
+
+    @Test void imageDecoratorPassThrough() {
+        int[] widened = {0};
+        int[] passed = {0};
+        ImageVisitor downstream = new ImageVisitor() {
+            @Override public void visitColorTable(int index, byte r, byte g, byte b) {}
+            @Override public void visitDataStart() {}
+            @Override public void visitData(int[] block) {
+                widened[0]++;
+            }
+            @Override public void visitData(byte[] block) {
+                passed[0]++;
+            }
+            @Override public void visitDataEnd() {}
+        };
+        int[] inspected = {0};
+        ImageVisitor inspecting = new ImageVisitorDecorator(downstream) {
+            @Override public void visitData(int[] block) {
+                inspected[0]++;
+                super.visitData(block);
+            }
+        };
+        inspecting.visitData(new byte[] {1, 2});
+        Assertions.assertArrayEquals(new int[] {1, 1, 0}, new int[] {inspected[0], widened[0], passed[0]});
+        new ImageVisitorDecorator(downstream, true) {}.visitData(new byte[] {1, 2});
+        Assertions.assertArrayEquals(new int[] {1, 1, 1}, new int[] {inspected[0], widened[0], passed[0]});
+    }
+
+    @Test void protoDecoratorPassThrough() {
+        int[] copied = {0};
+        int[] passed = {0};
+        ProtoImageVisitor downstream = new ProtoImageVisitor() {
+            @Override public void visitColorTable(int index, byte r, byte g, byte b) {}
+            @Override public void visitDataStart(int lzwCodeSize) {}
+            @Override public void visitDataBlock(byte[] block) {
+                copied[0]++;
+            }
+            @Override public void visitDataBlock(ByteBuffer block) {
+                passed[0]++;
+            }
+            @Override public void visitEnd() {}
+        };
+        int[] inspected = {0};
+        ProtoImageVisitor inspecting = new ProtoImageVisitorDecorator(downstream) {
+            @Override public void visitDataBlock(byte[] block) {
+                inspected[0]++;
+                super.visitDataBlock(block);
+            }
+        };
+        inspecting.visitDataBlock(ByteBuffer.wrap(new byte[] {1, 2}));
+        Assertions.assertArrayEquals(new int[] {1, 1, 0}, new int[] {inspected[0], copied[0], passed[0]});
+        new ProtoImageVisitorDecorator(downstream, true) {}.visitDataBlock(ByteBuffer.wrap(new byte[] {1, 2}));
+        Assertions.assertArrayEquals(new int[] {1, 1, 1}, new int[] {inspected[0], copied[0], passed[0]});
+    }
+
+    @Test void byteIndexDecoder() throws IOException {
+        ByteArrayOutputStream indices = new ByteArrayOutputStream();
+        new ProtoDecoder(ByteStream.from(input))
+                .accept(new ProtoVisitorDecorator(new ProtoEncoder(ByteSink.from(new ByteArrayOutputStream()))) {
+                    @Override public ProtoImageVisitor visitImage(ImageDescriptor descriptor) {
+                        return new ImageDecoder(DataDecoder::makeDirectDecoder, new ImageVisitor() {
+                            @Override public void visitColorTable(int index, byte r, byte g, byte b) {}
+                            @Override public void visitDataStart() {}
+                            @Override public void visitData(int[] block) {
+                                Assertions.fail();
+                            }
+                            @Override public void visitData(byte[] block) {
+                                indices.writeBytes(block);
+                            }
+                            @Override public void visitDataEnd() {}
+                        });
+                    }
+                });
+        Assertions.assertArrayEquals(Indices.narrow(index_data), indices.toByteArray());
+    }
+
+    @Test void mappedFileDecoder(@TempDir Path directory) throws IOException {
+        Path file = Files.write(directory.resolve("sample.gif"), input);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ProtoDecoder decoder = new ProtoDecoder(ByteStream.from(file))) {
+            decoder.accept(new ProtoEncoder(ByteSink.from(bos)));
+        }
+        Assertions.assertArrayEquals(input, bos.toByteArray());
+    }
+
+    @Test void streamBackends(@TempDir Path directory) throws Exception {
+        byte[] display = FrameDecoderTest.noise(120 * 90, 7);
+        byte[] gif = FrameDecoderTest.encode(120, 90, false, display);
+        Path file = Files.write(directory.resolve("noise.gif"), gif);
+        List<ByteStream> streams = List.of(
+                ByteStream.from(gif),
+                ByteStream.from(new ByteArrayInputStream(gif)),
+                ByteStream.from(Channels.newChannel(new ByteArrayInputStream(gif)), ByteBuffer.allocate(300)),
+                ByteStream.from(file),
+                ByteStream.from(AsynchronousFileChannel.open(file), 100),
+                ByteStream.from(AsynchronousFileChannel.open(file), 1 << 16));
+        for (ByteStream stream : streams) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            ProtoEncoder encoder = new ProtoEncoder(ByteSink.from(Channels.newChannel(bos), ByteBuffer.allocate(300)));
+            try (ProtoDecoder decoder = new ProtoDecoder(stream)) {
+                decoder.accept(encoder);
+            }
+            encoder.close();
+            Assertions.assertArrayEquals(gif, bos.toByteArray());
+            Assertions.assertArrayEquals(display, FrameDecoderTest.decode(bos.toByteArray()));
+        }
+    }
+
+    @Test void skipUnwantedImages(@TempDir Path directory) throws Exception {
+        byte[][] frames = new byte[5][];
+        for (int j = 0; j < frames.length; j++) {
+            frames[j] = FrameDecoderTest.noise(64 * 48, j);
+        }
+        byte[] gif = FrameDecoderTest.encode(64, 48, false, frames);
+        Path file = Files.write(directory.resolve("frames.gif"), gif);
+        List<ByteStream> streams = List.of(
+                ByteStream.from(gif),
+                ByteStream.from(new ByteArrayInputStream(gif)),
+                ByteStream.from(Channels.newChannel(new ByteArrayInputStream(gif)), ByteBuffer.allocate(300)),
+                ByteStream.from(FileChannel.open(file), ByteBuffer.allocate(300)),
+                ByteStream.from(file));
+        for (ByteStream stream : streams) {
+            ByteArrayOutputStream indices = new ByteArrayOutputStream();
+            FrameDecoder frameDecoder = new FrameDecoder(DataDecoder::makeDecoder, new FrameVisitor() {
+                @Override public void visitColorTable(int index, byte r, byte g, byte b) {}
+                @Override public void visitFrame(ImageDescriptor descriptor, byte[] frame) {
+                    indices.write(frame, 0, descriptor.imageWidth() * descriptor.imageHeight());
+                }
+            });
+            try (ProtoDecoder decoder = new ProtoDecoder(stream)) {
+                decoder.accept(new ProtoVisitorDecorator(new ProtoEncoder(ByteSink.from(new ByteArrayOutputStream()))) {
+                    private int frame;
+                    @Override public ProtoImageVisitor visitImage(ImageDescriptor descriptor) {
+                        return frame++ == 3 ? frameDecoder.visitImage(descriptor) : null;
+                    }
+                });
+            }
+            Assertions.assertArrayEquals(frames[3], indices.toByteArray());
+        }
+    }
+
+    final byte[] extended = ByteArrays.builder()
+            .block('G', 'I', 'F', '8', '9', 'a')
+            .block(0x0a, 0x00, 0x0a, 0x00, 0x91, 0x00, 0x00)
+            .block(0xff, 0xff, 0xff, 0xff, 0x00, 0x00, 0x00, 0x00, 0xff, 0x00, 0x00, 0x00)
+            // Application extension
+            .block(0x21, 0xff, 0x0b, 'N', 'E', 'T', 'S', 'C', 'A', 'P', 'E', '2', '.', '0')
+            .block(0x03, 0x01, 0x00, 0x00, 0x00)
+            // Comment extension
+            .block(0x21, 0xfe, 0x05, 'h', 'e', 'l', 'l', 'o', 0x00)
+            // Plain text extension
+            .block(0x21, 0x01, 0x0c, 0, 0, 0, 0, 10, 0, 10, 0, 8, 8, 1, 0)
+            .block(0x02, 'h', 'i', 0x00)
+            .block(0x21, 0xf9, 0x04, 0x00, 0x00, 0x00, 0x00, 0x00)
+            // Image descriptor with a local color table
+            .block(0x2c, 0x00, 0x00, 0x00, 0x00, 0x0a, 0x00, 0x0a, 0x00, 0x81)
+            .block(0xff, 0xff, 0xff, 0xff, 0x00, 0x00, 0x00, 0x00, 0xff, 0x00, 0x00, 0x00)
+            .block(0x02, 0x16)
+            .block(0x8c, 0x2d, 0x99, 0x87)
+            .block(0x2a, 0x1c, 0xdc, 0x33)
+            .block(0xa0, 0x02, 0x75, 0xec)
+            .block(0x95, 0xfa, 0xa8, 0xde)
+            .block(0x60, 0x8c, 0x04, 0x91)
+            .block(0x4c, 0x01, 0x00)
+            .block(0x3b)
+            .array();
+
+    static byte[] pull(byte[] gif) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        new ProtoDecoder(ByteStream.from(gif)).accept(new ProtoEncoder(ByteSink.from(bos)));
+        return bos.toByteArray();
+    }
+
+    static byte[] push(byte[] gif, int chunkSize) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ProtoPushDecoder decoder = new ProtoPushDecoder(new ProtoEncoder(ByteSink.from(bos)));
+        ByteBuffer chunk = ByteBuffer.allocate(chunkSize);
+        for (int j = 0; j < gif.length; j += chunkSize) {
+            chunk.clear();
+            chunk.put(gif, j, Math.min(chunkSize, gif.length - j)).flip();
+            decoder.feed(chunk);
+            Assertions.assertFalse(chunk.hasRemaining());
+            // The chunk is reused, so retained bytes must not refer to it:
+            Arrays.fill(chunk.array(), (byte) 0x3b);
+        }
+        decoder.end();
+        return bos.toByteArray();
+    }
+
+    @Test void asyncFileSink(@TempDir Path directory) throws Exception {
+        byte[] gif = FrameDecoderTest.encode(120, 90, false, FrameDecoderTest.noise(120 * 90, 8));
+        for (int bufferSize : new int[] {1, 100, 1 << 16}) {
+            Path file = directory.resolve("copy-" + bufferSize + ".gif");
+            ProtoEncoder encoder = new ProtoEncoder(ByteSink.from(AsynchronousFileChannel.open(file,
+                    StandardOpenOption.WRITE, StandardOpenOption.CREATE), bufferSize));
+            new ProtoDecoder(ByteStream.from(gif)).accept(encoder);
+            encoder.close();
+            Assertions.assertArrayEquals(gif, Files.readAllBytes(file));
+        }
+    }
+
+    @Test void asyncFileSeek(@TempDir Path directory) throws IOException {
+        byte[][] frames = new byte[6][];
+        for (int j = 0; j < frames.length; j++) {
+            frames[j] = FrameDecoderTest.noise(40 * 30, j);
+        }
+        Path file = Files.write(directory.resolve("frames.gif"), FrameDecoderTest.encode(40, 30, false, frames));
+        try (ProtoDecoder decoder = new ProtoDecoder(ByteStream.from(AsynchronousFileChannel.open(file), 200))) {
+            FrameIndex index = FrameIndex.build(decoder);
+            for (int frame : new int[] {4, 1, 5, 5, 0}) {
+                Assertions.assertArrayEquals(frames[frame], FrameIndexTest.decodeFrame(decoder, index, frame));
+            }
+        }
+    }
+
+    /** Channel returning at most a few bytes per read, like a socket would. */
+    static ReadableByteChannel trickle(byte[] bytes) {
+        ReadableByteChannel channel = Channels.newChannel(new ByteArrayInputStream(bytes));
+        return new ReadableByteChannel() {
+            private int reads;
+            @Override public int read(ByteBuffer destination) throws IOException {
+                int limit = destination.limit();
+                destination.limit(Math.min(limit, destination.position() + 1 + reads++ % 7));
+                try {
+                    return channel.read(destination);
+                } finally {
+                    destination.limit(limit);
+                }
+            }
+            @Override public boolean isOpen() {
+                return channel.isOpen();
+            }
+            @Override public void close() throws IOException {
+                channel.close();
+            }
+        };
+    }
+
+    @Test void channelShortReads() throws IOException {
+        byte[] gif = FrameDecoderTest.encode(120, 90, true, FrameDecoderTest.noise(120 * 90, 9));
+        for (ChannelByteStream.Options options : List.of(
+                ChannelByteStream.Options.builder().build(),
+                ChannelByteStream.Options.builder().setBufferSize(2).setDirect(false).build(),
+                ChannelByteStream.Options.builder().setBufferSize(300).setReadAhead(ChannelByteStream.ReadAhead.FILL).build())) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            try (ProtoDecoder decoder = new ProtoDecoder(ByteStream.from(trickle(gif), options))) {
+                decoder.accept(new ProtoEncoder(ByteSink.from(bos)));
+            }
+            Assertions.assertArrayEquals(gif, bos.toByteArray());
+        }
+        ByteStream truncated = ByteStream.from(trickle(Arrays.copyOf(gif, 100)), ChannelByteStream.Options.builder().build());
+        Assertions.assertThrows(DataChannelException.class, () -> new ProtoDecoder(truncated).accept(
+                new ProtoEncoder(ByteSink.from(new ByteArrayOutputStream()))));
+    }
+
+    @Test void rawImageCopy(@TempDir Path directory) throws Exception {
+        byte[][] frames = new byte[3][];
+        for (int j = 0; j < frames.length; j++) {
+            frames[j] = FrameDecoderTest.noise(160 * 120, 20 + j);
+        }
+        byte[] gif = FrameDecoderTest.encode(160, 120, false, frames);
+        Path file = Files.write(directory.resolve("frames.gif"), gif);
+        // Delays are rewritten, compressed data is copied:
+        byte[] expected;
+        {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            new ProtoDecoder(ByteStream.from(gif)).accept(new ProtoVisitorDecorator(new ProtoEncoder(ByteSink.from(bos))) {
+                @Override public ProtoImageVisitor visitImage(ImageDescriptor descriptor) {
+                    return new ProtoImageVisitorDecorator(downstream.visitImage(descriptor)) {};
+                }
+                @Override public void visitGraphicsControlExtension(GraphicsControlExtension extension) {
+                    downstream.visitGraphicsControlExtension(extension.copy().setDelayTime(4).build());
+                }
+            });
+            expected = bos.toByteArray();
+        }
+        List<ByteStream> streams = List.of(
+                ByteStream.from(gif),
+                ByteStream.from(file),
+                ByteStream.from(new ByteArrayInputStream(gif)),
+                ByteStream.from(trickle(gif), ChannelByteStream.Options.builder().setBufferSize(100).build()),
+                ByteStream.from(FileChannel.open(file), ByteBuffer.allocate(300)));
+        for (ByteStream stream : streams) {
+            Path copy = directory.resolve("copy.gif");
+            Files.deleteIfExists(copy);
+            ProtoEncoder encoder = new ProtoEncoder(ByteSink.from(FileChannel.open(copy,
+                    StandardOpenOption.WRITE, StandardOpenOption.CREATE), ByteBuffer.allocate(300)));
+            try (ProtoDecoder decoder = new ProtoDecoder(stream)) {
+                decoder.accept(new ProtoVisitorDecorator(encoder) {
+                    @Override public void visitGraphicsControlExtension(GraphicsControlExtension extension) {
+                        downstream.visitGraphicsControlExtension(extension.copy().setDelayTime(4).build());
+                    }
+                });
+            }
+            encoder.close();
+            Assertions.assertArrayEquals(expected, Files.readAllBytes(copy));
+        }
+        // Decorators passing sub-blocks through keep the raw copy:
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        new ProtoDecoder(ByteStream.from(gif)).accept(new ProtoVisitorDecorator(new ProtoEncoder(ByteSink.from(bos))) {
+            @Override public ProtoImageVisitor visitImage(ImageDescriptor descriptor) {
+                return new ProtoImageVisitorDecorator(downstream.visitImage(descriptor), true) {
+                    @Override public void visitDataBlock(byte[] block) {
+                        Assertions.fail();
+                    }
+                };
+            }
+            @Override public void visitGraphicsControlExtension(GraphicsControlExtension extension) {
+                downstream.visitGraphicsControlExtension(extension.copy().setDelayTime(4).build());
+            }
+        });
+        Assertions.assertArrayEquals(expected, bos.toByteArray());
+    }
+
+    @Test void probe() throws IOException {
+        Assertions.assertEquals(new ProtoSummary(Version.gif89a, 10, 10, 4, 1, 0, 0, 4, true),
+                new ProtoDecoder(ByteStream.from(extended)).probe());
+
+        byte[][] frames = new byte[5][];
+        for (int j = 0; j < frames.length; j++) {
+            frames[j] = FrameDecoderTest.noise(64 * 48, j);
+        }
+        byte[] gif = FrameDecoderTest.encode(64, 48, false, frames);
+        try (ProtoDecoder decoder = new ProtoDecoder(ByteStream.from(gif))) {
+            Assertions.assertEquals(new ProtoSummary(Version.gif89a, 64, 48, 16, 5, 50, -1, 0, true), decoder.probe());
+            Assertions.assertEquals(new ProtoSummary(Version.gif89a, 64, 48, 16, 2, 20, -1, 0, false), decoder.probe(2));
+        }
+        ProtoDecoder truncated = new ProtoDecoder(ByteStream.from(Arrays.copyOf(gif, gif.length - 100)));
+        Assertions.assertThrows(DataChannelException.class, truncated::probe);
+        // Streams that cannot seek back are probed once:
+        ProtoDecoder once = new ProtoDecoder(ByteStream.from(new ByteArrayInputStream(gif)));
+        Assertions.assertEquals(5, once.probe().frames());
+        Assertions.assertThrows(IOException.class, once::probe);
+    }
+
+    @Test void pushDecoder() throws IOException {
+        byte[] frames = FrameDecoderTest.encode(100, 80, true,
+                FrameDecoderTest.noise(100 * 80, 1),
+                FrameDecoderTest.noise(100 * 80, 2));
+        for (byte[] gif : List.of(input, extended, frames)) {
+            byte[] expected = pull(gif);
+            for (int chunkSize : new int[] {1, 2, 3, 7, 64, 255, 256, 1000, gif.length}) {
+                Assertions.assertArrayEquals(expected, push(gif, chunkSize));
+            }
+        }
+        Assertions.assertArrayEquals(input, push(input, 5));
+        Assertions.assertArrayEquals(frames, push(frames, 100));
+    }
+
+    @Test void pushDecoderStopsAtTrailer() {
+        ProtoPushDecoder decoder = new ProtoPushDecoder(new ProtoEncoder(ByteSink.from(new ByteArrayOutputStream())));
+        ByteBuffer chunk = ByteBuffer.allocate(input.length + 3).put(input).put(new byte[] {1, 2, 3}).flip();
+        decoder.feed(ByteBuffer.wrap(input, 0, input.length - 1));
+        Assertions.assertFalse(decoder.isDone());
+        Assertions.assertThrows(DataChannelException.class, decoder::end);
+        decoder.feed(chunk.position(input.length - 1));
+        Assertions.assertTrue(decoder.isDone());
+        Assertions.assertEquals(3, chunk.remaining());
+        decoder.end();
+    }
 }
@@ -0,0 +1,146 @@
+package su.dkzde.genki;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class QuantizerTest {
+
+    static final List<Quantizer> quantizers = List.of(Quantizer.makeMedianCut(), Quantizer.makeOctree());
+
+    /** Smooth gradients over the whole color cube with a little noise, far more colors than a palette holds. */
+    static int[] photo(int width, int height, long seed) {
+        Random random = new Random(seed);
+        int[] argb = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int r = Math.min(255, 255 * x / width + random.nextInt(4));
+                int g = Math.min(255, 255 * y / height + random.nextInt(4));
+                int b = Math.min(255, 255 * (x + y) / (width + height) + random.nextInt(4));
+                argb[y * width + x] = 0xff000000 | r << 16 | g << 8 | b;
+            }
+        }
+        return argb;
+    }
+
+    static int[] colors(Palette palette, byte[] indices) {
+        int[] rgb = new int[indices.length];
+        for (int j = 0; j < indices.length; j++) {
+            rgb[j] = palette.colors()[Byte.toUnsignedInt(indices[j])];
+        }
+        return rgb;
+    }
+
+    static double meanError(int[] argb, int[] rgb) {
+        long error = 0;
+        for (int j = 0; j < argb.length; j++) {
+            for (int shift = 0; shift < 24; shift += 8) {
+                error += Math.abs((argb[j] >> shift & 0xff) - (rgb[j] >> shift & 0xff));
+            }
+        }
+        return error / (3.0 * argb.length);
+    }
+
+    @Test void exactColors() {
+        int[] table = {0x000000, 0xff0000, 0x00ff00, 0x0000ff, 0x808080, 0xffffff, 0x204060};
+        Random random = new Random(1);
+        int[] argb = new int[5000];
+        for (int j = 0; j < argb.length; j++) {
+            argb[j] = 0xff000000 | table[random.nextInt(table.length)];
+        }
+        for (Quantizer quantizer : quantizers) {
+            Palette palette = quantizer.palette(argb, 16);
+            Assertions.assertEquals(table.length, palette.size());
+            Assertions.assertEquals(-1, palette.transparentIndex());
+            Assertions.assertEquals(2, palette.colorTableSizeBits());
+            int[] rgb = colors(palette, palette.map(argb));
+            for (int j = 0; j < argb.length; j++) {
+                Assertions.assertEquals(argb[j] & 0xffffff, rgb[j]);
+            }
+        }
+    }
+
+    @Test void reduceColors() {
+        int[] argb = photo(256, 192, 2);
+        for (Quantizer quantizer : quantizers) {
+            for (int colors : new int[] {16, 256}) {
+                Palette palette = quantizer.palette(argb, colors);
+                Assertions.assertTrue(palette.size() <= colors);
+                Assertions.assertTrue(palette.size() > colors / 2);
+                double error = meanError(argb, colors(palette, palette.map(argb)));
+                Assertions.assertTrue(error < (colors == 16 ? 20 : 5), "mean error " + error);
+            }
+        }
+    }
+
+    @Test void reserveTransparentIndex() {
+        int[] argb = photo(64, 64, 3);
+        for (int j = 0; j < argb.length; j += 7) {
+            argb[j] = 0x00ffffff;
+        }
+        for (Quantizer quantizer : quantizers) {
+            Palette palette = quantizer.palette(argb, 32);
+            Assertions.assertTrue(palette.size() <= 32);
+            Assertions.assertEquals(palette.size() - 1, palette.transparentIndex());
+            byte[] indices = palette.map(argb);
+            for (int j = 0; j < argb.length; j++) {
+                Assertions.assertEquals(j % 7 == 0, Byte.toUnsignedInt(indices[j]) == palette.transparentIndex());
+            }
+        }
+        Palette empty = Quantizer.makeMedianCut().palette(new int[10], 256);
+        Assertions.assertEquals(1, empty.size());
+        Assertions.assertEquals(0, empty.transparentIndex());
+    }
+
+    @Test void parallelHistogram() {
+        int[] argb = photo(300, 200, 4);
+        ColorHistogram sequential = new ColorHistogram();
+        sequential.add(argb);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int tiles : new int[] {1, 3, 8, 1000}) {
+            ColorHistogram parallel = new ColorHistogram();
+            parallel.add(argb, executor, tiles);
+            for (Quantizer quantizer : quantizers) {
+                Assertions.assertArrayEquals(quantizer.colors(sequential, 64), quantizer.colors(parallel, 64));
+            }
+        }
+        executor.shutdown();
+    }
+
+    @Test void encodePalette() throws IOException {
+        int width = 120;
+        int height = 90;
+        int[] argb = photo(width, height, 5);
+        Palette palette = Quantizer.makeOctree().palette(argb, 64);
+        byte[] indices = palette.map(argb);
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ProtoEncoder encoder = new ProtoEncoder(ByteSink.from(bos));
+        encoder.visitHeader(Version.gif89a);
+        LogicalScreenDescriptor lsd = LogicalScreenDescriptor.builder()
+                .setLogicalScreenWidth(width)
+                .setLogicalScreenHeight(height)
+                .setGlobalColorTableUsed(true)
+                .setColorTableSizeBits(palette.colorTableSizeBits())
+                .build();
+        encoder.visitLogicalScreenDescriptor(lsd);
+        palette.visitGlobalColorTable(encoder);
+        ImageDescriptor id = ImageDescriptor.builder()
+                .setImageWidth(width)
+                .setImageHeight(height)
+                .build();
+        ImageEncoder image = new ImageEncoder(DataEncoder::makeEncoder, lsd, id, encoder.visitImage(id));
+        image.visitDataStart();
+        image.visitData(indices);
+        image.visitDataEnd();
+        encoder.visitEnd();
+
+        Assertions.assertArrayEquals(indices, FrameDecoderTest.decode(bos.toByteArray()));
+    }
+}
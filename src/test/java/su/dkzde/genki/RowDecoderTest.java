@@ -0,0 +1,73 @@
+package su.dkzde.genki;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+public class RowDecoderTest {
+
+    static final int width = 41;
+
+    int decodedBlocks;
+    int visitedRows;
+
+    byte[] decode(byte[] gif, int stopAfter) throws IOException {
+        ByteArrayOutputStream rows = new ByteArrayOutputStream();
+        RowDecoder decoder = new RowDecoder(() -> new DataDecoder() {
+            final DataDecoder backend = DataDecoder.makeDecoder();
+            @Override public void initialize(int mcs) {
+                backend.initialize(mcs);
+            }
+            @Override public byte[] decodeBytes(byte[] block) {
+                decodedBlocks++;
+                return backend.decodeBytes(block);
+            }
+            @Override public int decode(byte[] block, byte[] out, int offset) {
+                decodedBlocks++;
+                return backend.decode(block, out, offset);
+            }
+            @Override public void dispose() {
+                backend.dispose();
+            }
+        }, new RowVisitor() {
+            @Override public void visitColorTable(int index, byte r, byte g, byte b) {}
+            @Override public boolean visitRow(int y, byte[] indices, int offset) {
+                Assertions.assertEquals(visitedRows++, y);
+                rows.write(indices, offset, width);
+                return visitedRows < stopAfter;
+            }
+            @Override public void visitEnd() {}
+        });
+        new ProtoDecoder(ByteStream.from(gif)).accept(new ProtoVisitorDecorator(new ProtoEncoder(ByteSink.from(new ByteArrayOutputStream()))) {
+            @Override public ProtoImageVisitor visitImage(ImageDescriptor descriptor) {
+                return decoder.visitImage(descriptor);
+            }
+        });
+        return rows.toByteArray();
+    }
+
+    @Test void progressiveRows() throws IOException {
+        byte[] display = FrameDecoderTest.noise(width * 67, 1);
+        Assertions.assertArrayEquals(display, decode(FrameDecoderTest.encode(width, 67, false, display), Integer.MAX_VALUE));
+    }
+
+    @Test void interlacedRows() throws IOException {
+        byte[] display = FrameDecoderTest.noise(width * 67, 2);
+        Assertions.assertArrayEquals(display, decode(FrameDecoderTest.encode(width, 67, true, display), Integer.MAX_VALUE));
+    }
+
+    @Test void earlyTermination() throws IOException {
+        byte[] display = FrameDecoderTest.noise(width * 400, 3);
+        byte[] gif = FrameDecoderTest.encode(width, 400, false, display);
+        decode(gif, Integer.MAX_VALUE);
+        int allBlocks = decodedBlocks;
+        decodedBlocks = 0;
+        visitedRows = 0;
+        byte[] rows = decode(gif, 10);
+        Assertions.assertArrayEquals(Arrays.copyOf(display, width * 10), rows);
+        Assertions.assertTrue(decodedBlocks < allBlocks / 10);
+    }
+}